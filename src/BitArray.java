@@ -0,0 +1,63 @@
+public interface BitArray {
+
+    boolean get(long index);
+
+    void set(long index, boolean bit);
+
+    long getLong(long index, int length);
+
+    void setLong(long index, int length, long value);
+
+    long size();
+
+    default void flush(){}
+
+    default byte[] getMany(long index, int length){
+        byte[] returned = new byte[Main.roundUpDiv(length,8)];
+        for(int i = 0; i<length; i+=64){
+            int toRead = Math.min(64,length-i);
+            long data = getLong(index+i,toRead)<<(64-toRead);
+            int bytes = Main.roundUpDiv(toRead,8);
+            for(int b = 0; b<bytes; b++){
+                returned[(i>>>3)+b] = (byte)(data>>>(56-8*b));
+            }
+        }
+        return returned;
+    }
+
+    default void setMany(long index, int length, byte[] data){
+        for(int i = 0; i<length; i+=64){
+            int toWrite = Math.min(64,length-i);
+            int bytes = Main.roundUpDiv(toWrite,8);
+            long word = 0;
+            for(int b = 0; b<bytes; b++){
+                word |= ((long)data[(i>>>3)+b]&255)<<(56-8*b);
+            }
+            setLong(index+i,toWrite,word>>>(64-toWrite));
+        }
+    }
+
+    default void copy(long from, long to, long length){
+        if(from==to||length<=0){
+            return;
+        }
+        if(to<from){
+            for(long i = 0; i<length; i+=64){
+                int toCopy = (int)Math.min(64,length-i);
+                setLong(to+i,toCopy,getLong(from+i,toCopy));
+            }
+        }else{
+            for(long i = length; i>0; i-=64){
+                int toCopy = (int)Math.min(64,i);
+                setLong(to+i-toCopy,toCopy,getLong(from+i-toCopy,toCopy));
+            }
+        }
+    }
+
+    default void copyTo(BitArray dest, long length){
+        for(long i = 0; i<length; i+=64){
+            int toCopy = (int)Math.min(64,length-i);
+            dest.setLong(i,toCopy,getLong(i,toCopy));
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.function.BiFunction;
+import java.util.function.LongToDoubleFunction;
 
 public class BitEncoders {
 
@@ -22,4 +23,45 @@ public class BitEncoders {
         returned>>>=(l.length*bitsPerCon-bpd);
         return returned;
     };
+
+    public static final BiFunction<Long,Integer,byte[]> longEncoder = (l, bpd)->{
+        int bitsPerCon = BitList.bitsPerCon;
+        byte[] returned = new byte[(int)Math.ceil(bpd/(double)bitsPerCon)];
+        long bits = l<<(returned.length*bitsPerCon-bpd);
+        for(int index = returned.length-1; index>-1;index--){
+            returned[index] = (byte)bits;
+            bits>>>=bitsPerCon;
+        }
+        return returned;
+    };
+
+    public static final BiFunction<byte[],Integer,Long> longDecoder = (l, bpd)->{
+        int bitsPerCon = BitList.bitsPerCon;
+        long returned = 0;
+        for(int i = 1; i<=l.length;i++){
+            returned|=((long)l[l.length-i]&255)<<((i-1)*bitsPerCon);
+        }
+        returned>>>=(l.length*bitsPerCon-bpd);
+        return returned;
+    };
+
+    public static final BiFunction<Byte,Integer,byte[]> byteEncoder = (b, bpd)->longEncoder.apply((long)b,bpd);
+
+    public static final BiFunction<byte[],Integer,Byte> byteDecoder = (l, bpd)->(byte)(long)longDecoder.apply(l,bpd);
+
+    public static final BiFunction<Short,Integer,byte[]> shortEncoder = (s, bpd)->longEncoder.apply((long)s,bpd);
+
+    public static final BiFunction<byte[],Integer,Short> shortDecoder = (l, bpd)->(short)(long)longDecoder.apply(l,bpd);
+
+    public static final BiFunction<Float,Integer,byte[]> floatEncoder = (f, bpd)->longEncoder.apply((long)Float.floatToRawIntBits(f),bpd);
+
+    public static final BiFunction<byte[],Integer,Float> floatDecoder = (l, bpd)->Float.intBitsToFloat((int)(long)longDecoder.apply(l,bpd));
+
+    public static final BiFunction<Double,Integer,byte[]> doubleEncoder = (d, bpd)->longEncoder.apply(Double.doubleToRawLongBits(d),bpd);
+
+    public static final BiFunction<byte[],Integer,Double> doubleDecoder = (l, bpd)->Double.longBitsToDouble(longDecoder.apply(l,bpd));
+
+    public static final LongToDoubleFunction floatValues = (l)->Float.intBitsToFloat((int)l);
+
+    public static final LongToDoubleFunction doubleValues = Double::longBitsToDouble;
 }
@@ -3,7 +3,8 @@ import java.util.function.BiFunction;
 
 class BitList<E>{
 
-    private ByteArray container;
+    private BitArray container;
+    private final File source;
     public static final byte bitsPerCon = 8;
     private int bitsPerData;
     public final int length;
@@ -21,7 +22,8 @@ class BitList<E>{
         this.bitsPerData = bitsPerData;
         this.bitEncoder = bitEncoder;
         this.bitDecoder = bitDecoder;
-        container = new MemoryByteArray(Main.roundUpDiv(length*bitsPerData,bitsPerCon));
+        source = null;
+        container = new MemoryBitArray((long)length*bitsPerData);
     }
 
     public BitList(int length, int bitsPerData, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, File source){
@@ -35,7 +37,8 @@ class BitList<E>{
         this.bitsPerData = bitsPerData;
         this.bitEncoder = bitEncoder;
         this.bitDecoder = bitDecoder;
-        container = new DiskByteArray(Main.roundUpDiv(length*bitsPerData,bitsPerCon),source);
+        this.source = source;
+        container = new ByteBitArray(new DiskByteArray(Main.roundUpDiv((long)length*bitsPerData,bitsPerCon),source));
     }
 
     public int bitsPerData(){
@@ -43,29 +46,7 @@ class BitList<E>{
     }
 
     private void set(int index, int length, byte[] bitData){
-        int bitIndex = (index*bitsPerData)%bitsPerCon;
-        int conIndex = (index*bitsPerData)/bitsPerCon;
-        int freeBits;
-        int toWrite = bitsPerData*length;
-        for(int i = 0; i<toWrite;i+=freeBits){
-            if(bitIndex==bitsPerCon){
-                conIndex++;
-                bitIndex = 0;
-            }
-            int dataConIndex = i/bitsPerCon;
-            int dataBitIndex = i%bitsPerCon;
-            freeBits = Math.min(toWrite-i,Math.min(bitsPerCon-dataBitIndex,bitsPerCon-bitIndex));
-            int dataByte = bitData[dataConIndex]&255;
-            dataByte>>>=bitIndex;
-            int mask = (Integer.MIN_VALUE>>(freeBits-1));
-            mask>>>=(32-bitsPerCon)+bitIndex;
-            byte data = container.get(conIndex);
-            data&=~mask;
-            data|=dataByte;
-            container.set(conIndex,data);
-            bitData[dataConIndex]<<=freeBits;
-            bitIndex+=freeBits;
-        }
+        container.setMany((long)index*bitsPerData,bitsPerData*length,bitData);
     }
 
     public void set(int index, E data){
@@ -76,7 +57,7 @@ class BitList<E>{
     }
 
     public void setMany(int index, int length, byte[] data){
-        if(index+length>this.length){
+        if((long)index+length>this.length){
             throw new ArrayIndexOutOfBoundsException();
         }
         if(data.length*8<length*bitsPerData){
@@ -86,28 +67,7 @@ class BitList<E>{
     }
 
     private byte[] get(int index, int length){
-        int toWrite = bitsPerData*length;
-        byte[] returned = new byte[(int)Math.ceil(toWrite/(double)bitsPerCon)];
-        int bitIndex = (index*bitsPerData)%bitsPerCon;
-        int conIndex = (index*bitsPerData)/bitsPerCon;
-        int freeBits;
-        for(int i = 0; i<toWrite;i+=freeBits){
-            if(bitIndex==bitsPerCon){
-                conIndex++;
-                bitIndex = 0;
-            }
-            int dataConIndex = i/bitsPerCon;
-            int dataBitIndex = i%bitsPerCon;
-            freeBits = Math.min(toWrite-i,Math.min(bitsPerCon-dataBitIndex,bitsPerCon-bitIndex));
-            int mask = (Integer.MIN_VALUE>>(freeBits-1));
-            mask>>>=(32-bitsPerCon)+bitIndex;
-            int data = container.get(conIndex)&mask;
-            data<<=bitIndex;
-            data>>>=dataBitIndex;
-            returned[dataConIndex]|=data;
-            bitIndex+=freeBits;
-        }
-        return returned;
+        return container.getMany((long)index*bitsPerData,bitsPerData*length);
     }
 
     public E get(int index){
@@ -118,7 +78,7 @@ class BitList<E>{
     }
 
     public byte[] getMany(int index, int length){
-        if(index+length>this.length){
+        if((long)index+length>this.length){
             throw new ArrayIndexOutOfBoundsException("Index "+(index+length)+" is greater than length "+this.length);
         }
         return get(index,length);
@@ -134,7 +94,7 @@ class BitList<E>{
             if(container.getClass()==newList.container.getClass()){
                 container = newList.container;
             }else{
-                container = new DiskByteArray(Main.roundUpDiv(length*bitsPerData,bitsPerCon),((DiskByteArray)container).source());
+                container = new ByteBitArray(new DiskByteArray(Main.roundUpDiv((long)length*bitsPerData,bitsPerCon),source));
                 for(int i = 0; i<length;i++){
                     set(i,newList.get(i));
                 }
@@ -0,0 +1,234 @@
+public class BlockBitArray implements BitArray{
+
+    public static final int defaultBlockBits = 1<<15;
+
+    private final int blockBits;
+    private MemoryBitArray[] blocks;
+    private int[] lengths;
+    private long[] starts;
+    private long length;
+    private int blockCount, lastBlock, writeBlock, writePos;
+
+    public BlockBitArray(){
+        this(defaultBlockBits);
+    }
+
+    public BlockBitArray(int blockBits){
+        if(blockBits<64||blockBits%64!=0){
+            throw new IllegalArgumentException("Block bits must be a positive multiple of 64");
+        }
+        this.blockBits = blockBits;
+        blocks = new MemoryBitArray[4];
+        lengths = new int[4];
+        starts = new long[4];
+    }
+
+    public long size(){
+        return length;
+    }
+
+    public int blockCount(){
+        return blockCount;
+    }
+
+    private int locate(long index){
+        if(index<0||index>=length){
+            throw new ArrayIndexOutOfBoundsException("Index "+index+" is greater than length "+length);
+        }
+        long start = starts[lastBlock];
+        if(index>=start&&index<start+lengths[lastBlock]){
+            return lastBlock;
+        }
+        int low = 0, high = blockCount-1;
+        while(low<high){
+            int mid = (low+high+1)>>>1;
+            if(starts[mid]<=index){
+                low = mid;
+            }else{
+                high = mid-1;
+            }
+        }
+        lastBlock = low;
+        return low;
+    }
+
+    public boolean get(long index){
+        int block = locate(index);
+        return blocks[block].get(index-starts[block]);
+    }
+
+    public void set(long index, boolean bit){
+        int block = locate(index);
+        blocks[block].set(index-starts[block],bit);
+    }
+
+    public long getLong(long index, int length){
+        if(length==0){
+            return 0;
+        }
+        int block = locate(index);
+        int offset = (int)(index-starts[block]);
+        int available = lengths[block]-offset;
+        if(length<=available){
+            return blocks[block].getLong(offset,length);
+        }
+        long first = blocks[block].getLong(offset,available);
+        return (first<<(length-available))|getLong(index+available,length-available);
+    }
+
+    public void setLong(long index, int length, long value){
+        if(length==0){
+            return;
+        }
+        int block = locate(index);
+        int offset = (int)(index-starts[block]);
+        int available = lengths[block]-offset;
+        if(length<=available){
+            blocks[block].setLong(offset,length,value);
+            return;
+        }
+        blocks[block].setLong(offset,available,value>>>(length-available));
+        setLong(index+available,length-available,value);
+    }
+
+    public void insert(long index, long count){
+        if(index<0||index>length){
+            throw new ArrayIndexOutOfBoundsException("Index "+index+" is greater than length "+length);
+        }
+        if(count<=0){
+            return;
+        }
+        if(blockCount==0){
+            openBlocks(0,1);
+        }
+        int block = index==length?blockCount-1:locate(index);
+        int offset = (int)(index-starts[block]);
+        int tail = lengths[block]-offset;
+        MemoryBitArray current = blocks[block];
+        if(lengths[block]+count<=blockBits){
+            current.copy(offset,offset+count,tail);
+            clear(current,offset,(int)count);
+            lengths[block]+=(int)count;
+            for(int b = block+1; b<blockCount; b++){
+                starts[b]+=count;
+            }
+        }else{
+            MemoryBitArray saved = new MemoryBitArray(tail);
+            for(int i = 0; i<tail; i+=64){
+                int toCopy = Math.min(64,tail-i);
+                saved.setLong(i,toCopy,current.getLong(offset+i,toCopy));
+            }
+            openBlocks(block+1,Math.toIntExact(Main.roundUpDiv(offset+count+tail-blockBits,blockBits)));
+            writeBlock = block;
+            writePos = offset;
+            for(long i = 0; i<count; i+=64){
+                write(0,(int)Math.min(64,count-i));
+            }
+            for(int i = 0; i<tail; i+=64){
+                int toCopy = Math.min(64,tail-i);
+                write(saved.getLong(i,toCopy),toCopy);
+            }
+            for(int b = block; b<writeBlock; b++){
+                lengths[b] = blockBits;
+            }
+            lengths[writeBlock] = writePos;
+            recomputeStarts(block);
+        }
+        length+=count;
+    }
+
+    public void remove(long start, long end){
+        if(start<0||end>length||start>end){
+            throw new IllegalArgumentException("Invalid range");
+        }
+        if(start==end){
+            return;
+        }
+        int block = locate(start);
+        long removed = end-start;
+        long position = start;
+        int first = block;
+        while(removed>0){
+            int offset = (int)(position-starts[block]);
+            int toRemove = (int)Math.min(removed,lengths[block]-offset);
+            blocks[block].copy(offset+toRemove,offset,lengths[block]-offset-toRemove);
+            lengths[block]-=toRemove;
+            removed-=toRemove;
+            if(lengths[block]==0){
+                closeBlocks(block,1);
+            }else{
+                block++;
+            }
+            position = start;
+            if(block<blockCount){
+                starts[block] = start;
+            }
+        }
+        length-=end-start;
+        first = Math.max(0,Math.min(first,blockCount-1));
+        if(first+1<blockCount&&lengths[first]+lengths[first+1]<=blockBits){
+            MemoryBitArray current = blocks[first], next = blocks[first+1];
+            for(int i = 0; i<lengths[first+1]; i+=64){
+                int toCopy = Math.min(64,lengths[first+1]-i);
+                current.setLong(lengths[first]+i,toCopy,next.getLong(i,toCopy));
+            }
+            lengths[first]+=lengths[first+1];
+            closeBlocks(first+1,1);
+        }
+        recomputeStarts(0);
+    }
+
+    private void write(long value, int count){
+        int room = blockBits-writePos;
+        if(count<=room){
+            blocks[writeBlock].setLong(writePos,count,value);
+            writePos+=count;
+            return;
+        }
+        blocks[writeBlock].setLong(writePos,room,value>>>(count-room));
+        writeBlock++;
+        blocks[writeBlock].setLong(0,count-room,value);
+        writePos = count-room;
+    }
+
+    private void clear(MemoryBitArray block, int start, int count){
+        for(int i = 0; i<count; i+=64){
+            block.setLong(start+i,Math.min(64,count-i),0);
+        }
+    }
+
+    private void openBlocks(int index, int count){
+        if(blockCount+count>blocks.length){
+            int capacity = Math.max(blocks.length*2,blockCount+count);
+            blocks = java.util.Arrays.copyOf(blocks,capacity);
+            lengths = java.util.Arrays.copyOf(lengths,capacity);
+            starts = java.util.Arrays.copyOf(starts,capacity);
+        }
+        System.arraycopy(blocks,index,blocks,index+count,blockCount-index);
+        System.arraycopy(lengths,index,lengths,index+count,blockCount-index);
+        System.arraycopy(starts,index,starts,index+count,blockCount-index);
+        for(int b = index; b<index+count; b++){
+            blocks[b] = new MemoryBitArray(blockBits);
+            lengths[b] = 0;
+        }
+        blockCount+=count;
+        lastBlock = 0;
+    }
+
+    private void closeBlocks(int index, int count){
+        System.arraycopy(blocks,index+count,blocks,index,blockCount-index-count);
+        System.arraycopy(lengths,index+count,lengths,index,blockCount-index-count);
+        System.arraycopy(starts,index+count,starts,index,blockCount-index-count);
+        blockCount-=count;
+        blocks[blockCount] = null;
+        lastBlock = 0;
+    }
+
+    private void recomputeStarts(int from){
+        long start = from==0?0:starts[from-1]+lengths[from-1];
+        for(int b = from; b<blockCount; b++){
+            starts[b] = start;
+            start+=lengths[b];
+        }
+    }
+}
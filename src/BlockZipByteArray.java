@@ -0,0 +1,132 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class BlockZipByteArray implements ResizableByteArray{
+
+    public static final int defaultCacheBlocks = 64;
+
+    private final MemoryController source;
+    private final long[] offsets;
+    private final long dataStart, bitSize, size;
+    private final int blockSize, blockBits, blockMask;
+    private final LinkedHashMap<Integer,byte[]> blocks;
+    private final Inflater inflater;
+    private int lastBlock = -1;
+    private byte[] lastData;
+    private long hits, misses;
+
+    public BlockZipByteArray(MemoryController source){
+        this(source,defaultCacheBlocks);
+    }
+
+    public BlockZipByteArray(MemoryController source, int cacheBlocks){
+        if(source==null||cacheBlocks<=0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        this.source = source;
+        bitSize = source.getBitsAsLong(0,64);
+        blockSize = (int)source.getBitsAsLong(64,32);
+        int count = (int)source.getBitsAsLong(96,32);
+        if(bitSize<0||blockSize<=0||Integer.bitCount(blockSize)!=1||count!=Main.roundUpDiv(Main.roundUpDiv(bitSize,8),blockSize)){
+            throw new IllegalArgumentException("Invalid block table");
+        }
+        offsets = new long[count+1];
+        for(int b = 0; b<=count; b++){
+            offsets[b] = source.getBitsAsLong(128+64L*b,64);
+        }
+        dataStart = BlockZipEncoder.headerSize(count);
+        size = Main.roundUpDiv(bitSize,8);
+        blockBits = Integer.numberOfTrailingZeros(blockSize);
+        blockMask = blockSize-1;
+        blocks = new LinkedHashMap<>(16,0.75f,true){
+            protected boolean removeEldestEntry(Map.Entry<Integer,byte[]> eldest){
+                return size()>cacheBlocks;
+            }
+        };
+        inflater = new Inflater();
+    }
+
+    public long size(){
+        return size;
+    }
+
+    public long bitSize(){
+        return bitSize;
+    }
+
+    public int blockCount(){
+        return offsets.length-1;
+    }
+
+    public long hits(){
+        return hits;
+    }
+
+    public long misses(){
+        return misses;
+    }
+
+    public void resetStatistics(){
+        hits = 0;
+        misses = 0;
+    }
+
+    public void resize(long newSize){
+        if(newSize==size){
+            return;
+        }
+        throw new IllegalStateException("Compressed blocks are read only");
+    }
+
+    public byte get(long i){
+        return block((int)(i>>>blockBits))[(int)i&blockMask];
+    }
+
+    public void set(long i, byte value){
+        throw new IllegalStateException("Compressed blocks are read only");
+    }
+
+    private synchronized byte[] block(int block){
+        if(block==lastBlock){
+            hits++;
+            return lastData;
+        }
+        byte[] data = blocks.get(block);
+        if(data==null){
+            misses++;
+            data = inflate(block);
+            blocks.put(block,data);
+        }else{
+            hits++;
+        }
+        lastBlock = block;
+        lastData = data;
+        return data;
+    }
+
+    private byte[] inflate(int block){
+        long start = dataStart+offsets[block]*8;
+        byte[] compressed = source.getBits(start,Math.toIntExact((offsets[block+1]-offsets[block])*8));
+        byte[] data = new byte[(int)Math.min(blockSize,size-((long)block<<blockBits))];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try{
+            int read = 0;
+            while(read<data.length&&!inflater.finished()){
+                int count = inflater.inflate(data,read,data.length-read);
+                if(count==0&&(inflater.needsInput()||inflater.needsDictionary())){
+                    break;
+                }
+                read+=count;
+            }
+            if(read!=data.length){
+                throw new IllegalStateException("Truncated block "+block);
+            }
+        }catch(DataFormatException e){
+            throw new RuntimeException("Decoding Error");
+        }
+        return data;
+    }
+}
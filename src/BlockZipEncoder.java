@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.function.BiFunction;
+import java.util.zip.Deflater;
+
+public class BlockZipEncoder<E> implements MatrixEncoder<E> {
+
+    public static final int defaultBlockSize = 1<<16;
+
+    private MatrixEncoder<E> baseEncoder;
+    private final int blockSize, cacheBlocks;
+    private long totalSize, tableSize;
+
+    public BlockZipEncoder(MatrixEncoder<E> baseEncoder){
+        this(baseEncoder,defaultBlockSize,BlockZipByteArray.defaultCacheBlocks);
+    }
+
+    public BlockZipEncoder(MatrixEncoder<E> baseEncoder, int blockSize, int cacheBlocks){
+        if(blockSize<=0||Integer.bitCount(blockSize)!=1||cacheBlocks<=0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        this.baseEncoder = baseEncoder;
+        this.blockSize = blockSize;
+        this.cacheBlocks = cacheBlocks;
+    }
+
+    public String getName(){
+        return "BlockZip";
+    }
+
+    public long refSize() {
+        return tableSize;
+    }
+
+    public long dataSize() {
+        return totalSize-tableSize;
+    }
+
+    public int headerSize() {
+        return 128;
+    }
+
+    public void setMatrix(E[][] m) {
+        baseEncoder.setMatrix(m);
+    }
+
+    public void setEncoder(BiFunction<E, Integer, byte[]> e) {
+        baseEncoder.setEncoder(e);
+    }
+
+    public void setDecoder(BiFunction<byte[], Integer, E> d) {
+        baseEncoder.setDecoder(d);
+    }
+
+    static long headerSize(int blockCount){
+        return 128+64L*(blockCount+1);
+    }
+
+    public MemoryController encodeMatrix(MemoryController controller) {
+        controller.clear();
+        MemoryController nestedController = baseEncoder.encodeMatrix(new MemoryController());
+        long bitSize = nestedController.size();
+        long blockBits = (long)blockSize*8;
+        int count = Math.toIntExact(Main.roundUpDiv(bitSize,blockBits));
+        byte[][] compressed = new byte[count][];
+        long[] offsets = new long[count+1];
+        Deflater deflater = new Deflater();
+        byte[] buffer = new byte[blockSize+(blockSize>>>3)+64];
+        for(int b = 0; b<count; b++){
+            long start = b*blockBits;
+            deflater.reset();
+            deflater.setInput(nestedController.getBits(start,(int)Math.min(blockBits,bitSize-start)));
+            deflater.finish();
+            int length = 0;
+            while(!deflater.finished()){
+                if(length==buffer.length){
+                    buffer = Arrays.copyOf(buffer,buffer.length*2);
+                }
+                length+=deflater.deflate(buffer,length,buffer.length-length);
+            }
+            compressed[b] = Arrays.copyOf(buffer,length);
+            offsets[b+1] = offsets[b]+length;
+        }
+        deflater.end();
+        MemoryController.MemoryBitOutputStream writer = controller.outputStream();
+        writer.writeBitsAsLong(64,bitSize);
+        writer.writeBitsAsLong(32,blockSize);
+        writer.writeBitsAsLong(32,count);
+        for(long offset : offsets){
+            writer.writeBitsAsLong(64,offset);
+        }
+        for(byte[] block : compressed){
+            writer.writeBits(block.length*8,block);
+        }
+        controller.trim();
+        totalSize = controller.size();
+        tableSize = headerSize(count)-headerSize();
+        return controller;
+    }
+
+    public Matrix<E> getMatrix(MemoryController controller, double cachePercent) {
+        return new BlockZipMatrix<>(
+                controller,
+                baseEncoder,
+                cacheBlocks,
+                cachePercent
+        );
+    }
+
+    public MemoryController unZip(MemoryController source, MemoryController dest){
+        BlockZipByteArray blocks = new BlockZipByteArray(source,1);
+        dest.clear();
+        MemoryController.MemoryBitOutputStream outputStream = dest.outputStream();
+        long bitSize = blocks.bitSize();
+        for(long i = 0; i<bitSize; i+=64){
+            int length = (int)Math.min(64,bitSize-i);
+            long word = 0;
+            for(int b = 0; b<Main.roundUpDiv(length,8); b++){
+                word |= ((long)blocks.get((i>>>3)+b)&255)<<(56-8*b);
+            }
+            outputStream.writeBitsAsLong(length,word>>>(64-length));
+        }
+        return dest;
+    }
+
+    public E[][] decodeMatrix(MemoryController controller) {
+        return baseEncoder.decodeMatrix(unZip(controller,new MemoryController()));
+    }
+
+    public void decode(MemoryController controller, MatrixVisitor<E> visitor){
+        baseEncoder.decode(unZip(controller,new MemoryController()),visitor);
+    }
+
+}
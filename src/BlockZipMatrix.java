@@ -0,0 +1,67 @@
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongToDoubleFunction;
+
+public class BlockZipMatrix<E> extends Matrix<E> {
+
+    private final MemoryController encodedMatrix;
+    public final MatrixEncoder<E> baseEncoder;
+    private final BlockZipByteArray blocks;
+    private final Matrix<E> nestedMatrix;
+
+    public BlockZipMatrix(MemoryController encodedMatrix, MatrixEncoder<E> baseEncoder){
+        this(encodedMatrix,baseEncoder,BlockZipByteArray.defaultCacheBlocks,0);
+    }
+
+    public BlockZipMatrix(MemoryController encodedMatrix, MatrixEncoder<E> baseEncoder, int cacheBlocks, double cachePercent){
+        this.encodedMatrix = encodedMatrix;
+        this.baseEncoder = baseEncoder;
+        trim();
+        blocks = new BlockZipByteArray(encodedMatrix,cacheBlocks);
+        nestedMatrix = baseEncoder.getMatrix(MemoryController.readOnly(blocks,blocks.bitSize()),cachePercent);
+    }
+
+    public BlockZipByteArray blocks(){
+        return blocks;
+    }
+
+    public long estimateBitSize() {
+        return encodedMatrix.size();
+    }
+
+    public void trim() {
+        encodedMatrix.trim();
+    }
+
+    public E get(int r, int c) {
+        return nestedMatrix.get(r,c);
+    }
+
+    public E set(int r, int c, E value) {
+        return null; // Not supported
+    }
+
+    public int height(){
+        return nestedMatrix.height();
+    }
+
+    public int width(){
+        return nestedMatrix.width();
+    }
+
+    public E[][] toRawMatrix(){
+        return nestedMatrix.toRawMatrix();
+    }
+
+    public void visit(MatrixVisitor<E> visitor){
+        nestedMatrix.visit(visitor);
+    }
+
+    public void multiply(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool){
+        nestedMatrix.multiply(x,y,values,transpose,pool);
+    }
+
+    public Iterator<DataPoint<E>> iterator(int r, int c, int h, int w, IteratorType type){
+        return nestedMatrix.iterator(r,c,h,w,type);
+    }
+}
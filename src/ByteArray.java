@@ -1,8 +1,10 @@
 public interface ByteArray {
 
-    byte get(int i);
+    byte get(long i);
 
-    void set(int i, byte value);
+    void set(long i, byte value);
 
-    int size();
+    long size();
+
+    default void flush(){}
 }
@@ -0,0 +1,72 @@
+public class ByteBitArray implements BitArray{
+
+    private final ByteArray container;
+
+    public ByteBitArray(ByteArray container){
+        this.container = container;
+    }
+
+    public ByteArray container(){
+        return container;
+    }
+
+    public long size(){
+        return container.size()*8;
+    }
+
+    public void flush(){
+        container.flush();
+    }
+
+    public boolean get(long index){
+        return (container.get(index>>>3)&(128>>>((int)index&7)))!=0;
+    }
+
+    public void set(long index, boolean bit){
+        long conIndex = index>>>3;
+        int mask = 128>>>((int)index&7);
+        byte data = container.get(conIndex);
+        container.set(conIndex,(byte)(bit?data|mask:data&~mask));
+    }
+
+    public long getLong(long index, int length){
+        if(length==0){
+            return 0;
+        }
+        if(length>56){
+            return (getLong(index,length-32)<<32)|getLong(index+length-32,32);
+        }
+        long conIndex = index>>>3;
+        int offset = (int)index&7;
+        int bytes = (offset+length+7)>>>3;
+        long data = 0;
+        for(int b = 0; b<bytes; b++){
+            data |= ((long)container.get(conIndex+b)&255)<<(56-8*b);
+        }
+        return (data<<offset)>>>(64-length);
+    }
+
+    public void setLong(long index, int length, long value){
+        if(length==0){
+            return;
+        }
+        if(length>56){
+            setLong(index,length-32,value>>>32);
+            setLong(index+length-32,32,value);
+            return;
+        }
+        long conIndex = index>>>3;
+        int offset = (int)index&7;
+        int bytes = (offset+length+7)>>>3;
+        long data = 0;
+        for(int b = 0; b<bytes; b++){
+            data |= ((long)container.get(conIndex+b)&255)<<(56-8*b);
+        }
+        int shift = 64-offset-length;
+        long mask = (-1L>>>(64-length))<<shift;
+        data = (data&~mask)|((value<<shift)&mask);
+        for(int b = 0; b<bytes; b++){
+            container.set(conIndex+b,(byte)(data>>>(56-8*b)));
+        }
+    }
+}
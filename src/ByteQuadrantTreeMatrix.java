@@ -0,0 +1,44 @@
+import java.io.File;
+
+public class ByteQuadrantTreeMatrix extends QuadrantTreeMatrix<Byte>{
+
+    public ByteQuadrantTreeMatrix(MemoryController encodedMatrix, double cachePercent){
+        super(encodedMatrix,BitEncoders.byteEncoder,BitEncoders.byteDecoder,cachePercent);
+    }
+
+    public ByteQuadrantTreeMatrix(byte[][] matrix, int bitsPerData, double cachePercent){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix,bitsPerData).encodeMatrix(new MemoryController(defaultStorage)),cachePercent);
+    }
+
+    public ByteQuadrantTreeMatrix(byte[][] matrix, int bitsPerData, double cachePercent, File source){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix,bitsPerData).encodeMatrix(new MemoryController(source)),cachePercent);
+    }
+
+    public byte getByte(int r, int c){
+        return (byte)getRaw(r,c);
+    }
+
+    public byte setByte(int r, int c, byte value){
+        setRaw(r,c,value);
+        return value;
+    }
+
+    public ByteCursor cursor(){
+        return cursor(0,0,height(),width());
+    }
+
+    public ByteCursor cursor(int r, int c, int h, int w){
+        return new ByteCursor(this,new Quadrant(r,c,h,w));
+    }
+
+    public static class ByteCursor extends TreeCursor{
+
+        private ByteCursor(ByteQuadrantTreeMatrix matrix, Quadrant readFrame){
+            super(matrix,readFrame);
+        }
+
+        public byte value(){
+            return (byte)bits();
+        }
+    }
+}
@@ -4,7 +4,8 @@ import java.util.function.BiFunction;
 public class CCSEncoder<E> implements MatrixEncoder<E> {
 
     private E[][] matrix;
-    private int bitsPerData, refSize, dataSize, headerSize;
+    private int bitsPerData, headerSize;
+    private long refSize, dataSize;
     private BiFunction<E,Integer,byte[]> encoder;
     private BiFunction<byte[],Integer,E> decoder;
 
@@ -15,11 +16,11 @@ public class CCSEncoder<E> implements MatrixEncoder<E> {
         this.decoder = d;
     }
 
-    public int refSize() {
+    public long refSize() {
         return refSize;
     }
 
-    public int dataSize() {
+    public long dataSize() {
         return dataSize;
     }
 
@@ -65,7 +66,7 @@ public class CCSEncoder<E> implements MatrixEncoder<E> {
                 countMap.put(matrix[r][c], val);
             }
         }
-        dataSize = (itemCount-maxCount)*bitsPerData;
+        dataSize = (long)(itemCount-maxCount)*bitsPerData;
         BiFunction<Integer,Integer,byte[]> intEncoder = BitEncoders.intEncoder;
         writer.writeBits(8,bitsPerData,intEncoder);
         writer.writeBits(bitsPerData,defaultItem,encoder);
@@ -95,7 +96,10 @@ public class CCSEncoder<E> implements MatrixEncoder<E> {
                 }
             }
         }
-        writer.writeBits(dataController.size(),dataController.getBits(0,dataController.size()));
+        for(long i = 0; i<dataController.size(); i+=64){
+            int toCopy = (int)Math.min(64,dataController.size()-i);
+            writer.writeBitsAsLong(toCopy,dataController.getBitsAsLong(i,toCopy));
+        }
         refSize = controller.size()-dataSize-headerSize;
         controller.trim();
         return controller;
@@ -114,6 +118,16 @@ public class CCSEncoder<E> implements MatrixEncoder<E> {
     }
 
     public static <V> V[][] decodeMatrix(MemoryController controller, BiFunction<byte[],Integer,V> decoder){
+        MatrixVisitor.DenseCollector<V> collector = new MatrixVisitor.DenseCollector<>();
+        decode(controller,decoder,collector);
+        return collector.matrix;
+    }
+
+    public void decode(MemoryController controller, MatrixVisitor<E> visitor){
+        decode(controller,decoder,visitor);
+    }
+
+    public static <V> void decode(MemoryController controller, BiFunction<byte[],Integer,V> decoder, MatrixVisitor<V> visitor){
         MemoryController.MemoryBitInputStream input = controller.inputStream();
         BiFunction<byte[],Integer,Integer> intDecoder = BitEncoders.intDecoder;
         int bitsPerData = input.readBits(8,intDecoder);
@@ -123,7 +137,7 @@ public class CCSEncoder<E> implements MatrixEncoder<E> {
         int widthBits = input.readBits(5,intDecoder)+1;
         int width = input.readBits(widthBits,intDecoder);
         int sizeBits = Integer.toString(height*width,2).length();
-        V[][] matrix = (V[][])new Object[height][width];
+        visitor.start(height,width);
         int[] offsetRay = new int[height];
         for(int c = 0; c<width; c++){
             offsetRay[c] = input.readBits(sizeBits,intDecoder);
@@ -135,18 +149,17 @@ public class CCSEncoder<E> implements MatrixEncoder<E> {
             while(input.hasNext()&&hasRead<toRead){
                 int row = input.readBits(heightBits,intDecoder);
                 V item = input.readBits(bitsPerData,decoder);
-                for(int r = lastRow+1; r<row;r++){
-                    matrix[r][c] = defaultItem;
+                if(row>lastRow+1){
+                    visitor.visitDefault(lastRow+1,c,row-lastRow-1,1,defaultItem);
                 }
-                matrix[row][c] = item;
+                visitor.visit(row,c,item);
                 hasRead++;
                 lastRow = row;
             }
-            for(int r = lastRow+1; r<height; r++){
-                matrix[r][c] = defaultItem;
+            if(lastRow+1<height){
+                visitor.visitDefault(lastRow+1,c,height-lastRow-1,1,defaultItem);
             }
         }
-        return matrix;
     }
 
     public String getName() {
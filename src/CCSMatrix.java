@@ -1,6 +1,10 @@
 import java.io.File;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiFunction;
+import java.util.function.LongToDoubleFunction;
 
 public class CCSMatrix<E> extends Matrix<E> {
 
@@ -39,7 +43,7 @@ public class CCSMatrix<E> extends Matrix<E> {
         ).encodeMatrix(new MemoryController(source)),bitEncoder,bitDecoder);
     }
 
-    public int estimateBitSize() {
+    public long estimateBitSize() {
         return encodedMatrix.size();
     }
 
@@ -49,7 +53,7 @@ public class CCSMatrix<E> extends Matrix<E> {
 
     private int getOffset(int col){
         int bitsPerSize = Main.logBaseCeil(height()*width()+1,2);
-        return encodedMatrix.getBits(header.headerSize+bitsPerSize*(col),bitsPerSize,intDecoder);
+        return (int)encodedMatrix.getBitsAsLong(header.headerSize+(long)bitsPerSize*col,bitsPerSize);
     }
 
     public E get(int r, int c) {
@@ -57,10 +61,10 @@ public class CCSMatrix<E> extends Matrix<E> {
         int start = getOffset(c);
         int toCheck = c==width()-1?height():getOffset(c+1)-start;
         int hasChecked = 0;
-        int currentBit = header.headerSize+bitsPerSize*width() + start*(header.bitsPerHeight+header.bitsPerData);
+        long currentBit = header.headerSize+(long)bitsPerSize*width()+(long)start*(header.bitsPerHeight+header.bitsPerData);
         while(currentBit<encodedMatrix.size()&&hasChecked<toCheck){
-            int row = encodedMatrix.getBits(currentBit,header.bitsPerHeight,intDecoder);
-            currentBit+=header.bitsPerWidth;
+            int row = (int)encodedMatrix.getBitsAsLong(currentBit,header.bitsPerHeight);
+            currentBit+=header.bitsPerHeight;
             if(row==r){
                 return encodedMatrix.getBits(currentBit,header.bitsPerData,bitDecoder);
             }
@@ -86,18 +90,107 @@ public class CCSMatrix<E> extends Matrix<E> {
         return CCSEncoder.decodeMatrix(encodedMatrix,bitDecoder);
     }
 
+    public void visit(MatrixVisitor<E> visitor){
+        CCSEncoder.decode(encodedMatrix,bitDecoder,visitor);
+    }
+
+    public void multiply(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool){
+        double defaultValue = startProduct(x,y,values,transpose,header);
+        ProductTask task = new ProductTask(x,y,values,defaultValue,!transpose,0,width());
+        if(pool==null){
+            task.multiplyColumns();
+        }else{
+            pool.invoke(task);
+        }
+    }
+
+    private int entryOffset(int col){
+        if(col==width()){
+            int bitsPerSize = Main.logBaseCeil(height()*width()+1,2);
+            return Math.toIntExact((encodedMatrix.size()-header.headerSize-(long)bitsPerSize*width())/(header.bitsPerHeight+header.bitsPerData));
+        }
+        return getOffset(col);
+    }
+
     public Iterator<DataPoint<E>> iterator(int r, int c, int h, int w, IteratorType type){
         Quadrant toIterate = new Quadrant(r,c,h,w);
         if(type==IteratorType.DEFAULT){
             return new ColumnIterator<>(this, toIterate);
         }
+        if(type==IteratorType.NON_DEFAULT){
+            return new SparseColumnIterator<>(this, toIterate);
+        }
         return new GenericIterator<>(this, toIterate,type);
     }
 
+    private class ProductTask extends RecursiveAction{
+
+        private static final long serialVersionUID = 1L;
+        private final double[] x, y;
+        private final LongToDoubleFunction values;
+        private final double defaultValue;
+        private final boolean scatter;
+        private final int startColumn, endColumn;
+
+        private ProductTask(double[] x, double[] y, LongToDoubleFunction values, double defaultValue, boolean scatter, int startColumn, int endColumn){
+            this.x = x;
+            this.y = y;
+            this.values = values;
+            this.defaultValue = defaultValue;
+            this.scatter = scatter;
+            this.startColumn = startColumn;
+            this.endColumn = endColumn;
+        }
+
+        protected void compute(){
+            if(endColumn-startColumn>1&&entryOffset(endColumn)-entryOffset(startColumn)>productCutoff){
+                int mid = (startColumn+endColumn)>>>1;
+                if(!scatter){
+                    invokeAll(new ProductTask(x,y,values,defaultValue,false,startColumn,mid),new ProductTask(x,y,values,defaultValue,false,mid,endColumn));
+                    return;
+                }
+                ProductTask fork = new ProductTask(x,new double[y.length],values,defaultValue,true,startColumn,mid);
+                fork.fork();
+                new ProductTask(x,y,values,defaultValue,true,mid,endColumn).compute();
+                fork.join();
+                for(int i = 0; i<y.length; i++){
+                    y[i]+=fork.y[i];
+                }
+                return;
+            }
+            multiplyColumns();
+        }
+
+        private void multiplyColumns(){
+            int bitsPerHeight = header.bitsPerHeight, bitsPerData = header.bitsPerData;
+            int entryBits = bitsPerHeight+bitsPerData;
+            long dataStart = header.headerSize+(long)Main.logBaseCeil(height()*width()+1,2)*width();
+            long currentBit = dataStart+(long)entryOffset(startColumn)*entryBits;
+            for(int col = startColumn; col<endColumn; col++){
+                long endBit = dataStart+(long)entryOffset(col+1)*entryBits;
+                double sum = 0, scale = scatter?x[col]:0;
+                for(; currentBit<endBit; currentBit+=entryBits){
+                    int index = (int)encodedMatrix.getBitsAsLong(currentBit,bitsPerHeight);
+                    double value = values.applyAsDouble(encodedMatrix.getBitsAsLong(currentBit+bitsPerHeight,bitsPerData))-defaultValue;
+                    if(scatter){
+                        y[index]+=value*scale;
+                    }else{
+                        sum+=value*x[index];
+                    }
+                }
+                if(!scatter){
+                    y[col]+=sum;
+                }
+            }
+        }
+    }
+
     private static class ColumnIterator<V> implements Iterator<DataPoint<V>>{
 
         private final CCSMatrix<V> matrix;
-        private int readCount, currentR, currentC, currentBit, cEndBit;
+        private int currentR, currentC;
+        private long readCount;
+        private long currentBit, cEndBit;
         private final int bitsPerSize;
         private final Quadrant readFrame;
 
@@ -114,9 +207,9 @@ public class CCSMatrix<E> extends Matrix<E> {
             if(col==matrix.width()-1){
                 cEndBit = matrix.encodedMatrix.size();
             }else{
-                cEndBit = matrix.header.headerSize+bitsPerSize*matrix.width() + matrix.getOffset(col+1)*(matrix.header.bitsPerHeight+matrix.header.bitsPerData);
+                cEndBit = matrix.header.headerSize+(long)bitsPerSize*matrix.width()+(long)matrix.getOffset(col+1)*(matrix.header.bitsPerHeight+matrix.header.bitsPerData);
             }
-            currentBit = matrix.header.headerSize+bitsPerSize*matrix.width() + rStart*(matrix.header.bitsPerHeight+matrix.header.bitsPerData);
+            currentBit = matrix.header.headerSize+(long)bitsPerSize*matrix.width()+(long)rStart*(matrix.header.bitsPerHeight+matrix.header.bitsPerData);
         }
 
         public boolean hasNext(){
@@ -137,11 +230,11 @@ public class CCSMatrix<E> extends Matrix<E> {
             }
             int bitsPerHeight = matrix.header.bitsPerHeight;
             int bitsPerData = matrix.header.bitsPerData;
-            int actualR = encodedMatrix.getBits(currentBit,bitsPerHeight,matrix.intDecoder);
+            int actualR = (int)encodedMatrix.getBitsAsLong(currentBit,bitsPerHeight);
             while(currentR < readFrame.yPos){
                 if(actualR<readFrame.yPos && currentBit+(bitsPerData+bitsPerHeight) < cEndBit){
                     currentBit+=(bitsPerHeight+bitsPerData);
-                    actualR = encodedMatrix.getBits(currentBit,bitsPerHeight,matrix.intDecoder);
+                    actualR = (int)encodedMatrix.getBitsAsLong(currentBit,bitsPerHeight);
                 }
                 currentR++;
             }
@@ -154,4 +247,80 @@ public class CCSMatrix<E> extends Matrix<E> {
             return new DataPoint<>(data,currentR++,currentC);
         }
     }
+
+    private static class SparseColumnIterator<V> implements Iterator<DataPoint<V>>{
+
+        private final CCSMatrix<V> matrix;
+        private final Quadrant readFrame;
+        private final long dataStart;
+        private final int entryBits;
+        private int col, found;
+        private long currentBit, endBit, dataIndex;
+        private boolean ready;
+
+        private SparseColumnIterator(CCSMatrix<V> matrix, Quadrant readFrame){
+            this.matrix = matrix;
+            this.readFrame = readFrame;
+            int bitsPerSize = Main.logBaseCeil(matrix.size()+1,2);
+            dataStart = matrix.header.headerSize+(long)bitsPerSize*matrix.width();
+            entryBits = matrix.header.bitsPerHeight+matrix.header.bitsPerData;
+            col = readFrame.xPos-1;
+        }
+
+        private void setUpColumn(){
+            int start = matrix.getOffset(col);
+            if(col==matrix.width()-1){
+                endBit = matrix.encodedMatrix.size();
+            }else{
+                endBit = dataStart+(long)matrix.getOffset(col+1)*entryBits;
+            }
+            currentBit = dataStart+(long)start*entryBits;
+            int low = 0, high = (int)Math.max(0,(endBit-currentBit)/entryBits);
+            while(low<high){
+                int mid = (low+high)>>>1;
+                if(matrix.encodedMatrix.getBitsAsLong(currentBit+(long)mid*entryBits,matrix.header.bitsPerHeight)<readFrame.yPos){
+                    low = mid+1;
+                }else{
+                    high = mid;
+                }
+            }
+            currentBit+=(long)low*entryBits;
+        }
+
+        private void advance(){
+            MemoryController encodedMatrix = matrix.encodedMatrix;
+            int bitsPerHeight = matrix.header.bitsPerHeight;
+            while(!ready){
+                if(currentBit>=endBit){
+                    if(col+1>=readFrame.xPos+readFrame.width){
+                        return;
+                    }
+                    col++;
+                    setUpColumn();
+                    continue;
+                }
+                found = (int)encodedMatrix.getBitsAsLong(currentBit,bitsPerHeight);
+                if(found>=readFrame.yPos+readFrame.height){
+                    currentBit = endBit;
+                    continue;
+                }
+                dataIndex = currentBit+bitsPerHeight;
+                currentBit+=entryBits;
+                ready = true;
+            }
+        }
+
+        public boolean hasNext(){
+            advance();
+            return ready;
+        }
+
+        public DataPoint<V> next(){
+            if(!hasNext()){
+                throw new NoSuchElementException("Iterator has no more elements");
+            }
+            ready = false;
+            return new DataPoint<>(matrix.encodedMatrix.getBits(dataIndex,matrix.header.bitsPerData,matrix.bitDecoder),found,col);
+        }
+    }
 }
@@ -4,7 +4,8 @@ import java.util.function.BiFunction;
 public class CRSEncoder<E> implements MatrixEncoder<E> {
 
     private E[][] matrix;
-    private int bitsPerData, refSize, dataSize, headerSize;
+    private int bitsPerData, headerSize;
+    private long refSize, dataSize;
     private BiFunction<E,Integer,byte[]> encoder;
     private BiFunction<byte[],Integer,E> decoder;
 
@@ -15,11 +16,11 @@ public class CRSEncoder<E> implements MatrixEncoder<E> {
         this.decoder = d;
     }
 
-    public int refSize() {
+    public long refSize() {
         return refSize;
     }
 
-    public int dataSize() {
+    public long dataSize() {
         return dataSize;
     }
 
@@ -65,7 +66,7 @@ public class CRSEncoder<E> implements MatrixEncoder<E> {
                 countMap.put(matrix[r][c], val);
             }
         }
-        dataSize = (itemCount-maxCount)*bitsPerData;
+        dataSize = (long)(itemCount-maxCount)*bitsPerData;
         BiFunction<Integer,Integer,byte[]> intEncoder = BitEncoders.intEncoder;
         writer.writeBits(8,bitsPerData,intEncoder);
         writer.writeBits(bitsPerData,defaultItem,encoder);
@@ -92,7 +93,10 @@ public class CRSEncoder<E> implements MatrixEncoder<E> {
                 }
             }
         }
-        writer.writeBits(dataController.size(),dataController.getBits(0,dataController.size()));
+        for(long i = 0; i<dataController.size(); i+=64){
+            int toCopy = (int)Math.min(64,dataController.size()-i);
+            writer.writeBitsAsLong(toCopy,dataController.getBitsAsLong(i,toCopy));
+        }
         refSize = controller.size()-dataSize-headerSize;
         controller.trim();
         return controller;
@@ -111,6 +115,16 @@ public class CRSEncoder<E> implements MatrixEncoder<E> {
     }
 
     public static <V> V[][] decodeMatrix(MemoryController controller, BiFunction<byte[],Integer,V> decoder){
+        MatrixVisitor.DenseCollector<V> collector = new MatrixVisitor.DenseCollector<>();
+        decode(controller,decoder,collector);
+        return collector.matrix;
+    }
+
+    public void decode(MemoryController controller, MatrixVisitor<E> visitor){
+        decode(controller,decoder,visitor);
+    }
+
+    public static <V> void decode(MemoryController controller, BiFunction<byte[],Integer,V> decoder, MatrixVisitor<V> visitor){
         MemoryController.MemoryBitInputStream input = controller.inputStream();
         BiFunction<byte[],Integer,Integer> intDecoder = BitEncoders.intDecoder;
         int bitsPerData = input.readBits(8,intDecoder);
@@ -120,7 +134,7 @@ public class CRSEncoder<E> implements MatrixEncoder<E> {
         int widthBits = input.readBits(5,intDecoder)+1;
         int width = input.readBits(widthBits,intDecoder);
         int sizeBits = Integer.toString(height*width,2).length();
-        V[][] matrix = (V[][])new Object[height][width];
+        visitor.start(height,width);
         int[] offsetRay = new int[height];
         for(int r = 0; r<height; r++){
             offsetRay[r] = input.readBits(sizeBits,intDecoder);
@@ -132,18 +146,17 @@ public class CRSEncoder<E> implements MatrixEncoder<E> {
             while(input.hasNext()&&hasRead<toRead){
                 int col = input.readBits(widthBits,intDecoder);
                 V item = input.readBits(bitsPerData,decoder);
-                for(int c = lastCol+1; c<col;c++){
-                    matrix[r][c] = defaultItem;
+                if(col>lastCol+1){
+                    visitor.visitDefault(r,lastCol+1,1,col-lastCol-1,defaultItem);
                 }
-                matrix[r][col] = item;
+                visitor.visit(r,col,item);
                 hasRead++;
                 lastCol = col;
             }
-            for(int c = lastCol+1; c<width; c++){
-                matrix[r][c] = defaultItem;
+            if(lastCol+1<width){
+                visitor.visitDefault(r,lastCol+1,1,width-lastCol-1,defaultItem);
             }
         }
-        return matrix;
     }
 
     public String getName() {
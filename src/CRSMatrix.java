@@ -1,6 +1,10 @@
 import java.io.File;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiFunction;
+import java.util.function.LongToDoubleFunction;
 
 public class CRSMatrix<E> extends Matrix<E> {
 
@@ -39,7 +43,7 @@ public class CRSMatrix<E> extends Matrix<E> {
         ).encodeMatrix(new MemoryController(source)),bitEncoder,bitDecoder);
     }
 
-    public int estimateBitSize() {
+    public long estimateBitSize() {
         return encodedMatrix.size();
     }
 
@@ -49,7 +53,7 @@ public class CRSMatrix<E> extends Matrix<E> {
 
     private int getOffset(int row){
         int bitsPerSize = Main.logBaseCeil(height()*width()+1,2);
-        return encodedMatrix.getBits(header.headerSize+bitsPerSize*(row),bitsPerSize,intDecoder);
+        return (int)encodedMatrix.getBitsAsLong(header.headerSize+(long)bitsPerSize*row,bitsPerSize);
     }
 
     public E get(int r, int c) {
@@ -57,9 +61,9 @@ public class CRSMatrix<E> extends Matrix<E> {
         int start = getOffset(r);
         int toCheck = r==height()-1?width():getOffset(r+1)-start;
         int hasChecked = 0;
-        int currentBit = header.headerSize+bitsPerSize*height() + start*(header.bitsPerWidth+header.bitsPerData);
+        long currentBit = header.headerSize+(long)bitsPerSize*height()+(long)start*(header.bitsPerWidth+header.bitsPerData);
         while(currentBit<encodedMatrix.size()&&hasChecked<toCheck){
-            int col = encodedMatrix.getBits(currentBit,header.bitsPerWidth,intDecoder);
+            int col = (int)encodedMatrix.getBitsAsLong(currentBit,header.bitsPerWidth);
             currentBit+=header.bitsPerWidth;
             if(col==c){
                 return encodedMatrix.getBits(currentBit,header.bitsPerData,bitDecoder);
@@ -86,18 +90,107 @@ public class CRSMatrix<E> extends Matrix<E> {
         return CRSEncoder.decodeMatrix(encodedMatrix,bitDecoder);
     }
 
+    public void visit(MatrixVisitor<E> visitor){
+        CRSEncoder.decode(encodedMatrix,bitDecoder,visitor);
+    }
+
+    public void multiply(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool){
+        double defaultValue = startProduct(x,y,values,transpose,header);
+        ProductTask task = new ProductTask(x,y,values,defaultValue,transpose,0,height());
+        if(pool==null){
+            task.multiplyRows();
+        }else{
+            pool.invoke(task);
+        }
+    }
+
+    private int entryOffset(int row){
+        if(row==height()){
+            int bitsPerSize = Main.logBaseCeil(height()*width()+1,2);
+            return Math.toIntExact((encodedMatrix.size()-header.headerSize-(long)bitsPerSize*height())/(header.bitsPerWidth+header.bitsPerData));
+        }
+        return getOffset(row);
+    }
+
     public Iterator<DataPoint<E>> iterator(int r, int c, int h, int w, IteratorType type){
         Quadrant toIterate = new Quadrant(r,c,h,w);
         if(type==IteratorType.DEFAULT){
             return new RowIterator<>(this, toIterate);
         }
+        if(type==IteratorType.NON_DEFAULT){
+            return new SparseRowIterator<>(this, toIterate);
+        }
         return new GenericIterator<>(this, toIterate,type);
     }
 
+    private class ProductTask extends RecursiveAction{
+
+        private static final long serialVersionUID = 1L;
+        private final double[] x, y;
+        private final LongToDoubleFunction values;
+        private final double defaultValue;
+        private final boolean scatter;
+        private final int startRow, endRow;
+
+        private ProductTask(double[] x, double[] y, LongToDoubleFunction values, double defaultValue, boolean scatter, int startRow, int endRow){
+            this.x = x;
+            this.y = y;
+            this.values = values;
+            this.defaultValue = defaultValue;
+            this.scatter = scatter;
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+
+        protected void compute(){
+            if(endRow-startRow>1&&entryOffset(endRow)-entryOffset(startRow)>productCutoff){
+                int mid = (startRow+endRow)>>>1;
+                if(!scatter){
+                    invokeAll(new ProductTask(x,y,values,defaultValue,false,startRow,mid),new ProductTask(x,y,values,defaultValue,false,mid,endRow));
+                    return;
+                }
+                ProductTask fork = new ProductTask(x,new double[y.length],values,defaultValue,true,startRow,mid);
+                fork.fork();
+                new ProductTask(x,y,values,defaultValue,true,mid,endRow).compute();
+                fork.join();
+                for(int i = 0; i<y.length; i++){
+                    y[i]+=fork.y[i];
+                }
+                return;
+            }
+            multiplyRows();
+        }
+
+        private void multiplyRows(){
+            int bitsPerWidth = header.bitsPerWidth, bitsPerData = header.bitsPerData;
+            int entryBits = bitsPerWidth+bitsPerData;
+            long dataStart = header.headerSize+(long)Main.logBaseCeil(height()*width()+1,2)*height();
+            long currentBit = dataStart+(long)entryOffset(startRow)*entryBits;
+            for(int row = startRow; row<endRow; row++){
+                long endBit = dataStart+(long)entryOffset(row+1)*entryBits;
+                double sum = 0, scale = scatter?x[row]:0;
+                for(; currentBit<endBit; currentBit+=entryBits){
+                    int index = (int)encodedMatrix.getBitsAsLong(currentBit,bitsPerWidth);
+                    double value = values.applyAsDouble(encodedMatrix.getBitsAsLong(currentBit+bitsPerWidth,bitsPerData))-defaultValue;
+                    if(scatter){
+                        y[index]+=value*scale;
+                    }else{
+                        sum+=value*x[index];
+                    }
+                }
+                if(!scatter){
+                    y[row]+=sum;
+                }
+            }
+        }
+    }
+
     private static class RowIterator<V> implements Iterator<DataPoint<V>>{
 
         private final CRSMatrix<V> matrix;
-        private int readCount, currentR, currentC, currentBit, rEndBit;
+        private int currentR, currentC;
+        private long readCount;
+        private long currentBit, rEndBit;
         private final int bitsPerSize;
         private final Quadrant readFrame;
 
@@ -114,9 +207,9 @@ public class CRSMatrix<E> extends Matrix<E> {
             if(row==matrix.height()-1){
                 rEndBit = matrix.encodedMatrix.size();
             }else{
-                rEndBit = matrix.header.headerSize+bitsPerSize*matrix.height() + matrix.getOffset(row+1)*(matrix.header.bitsPerWidth+matrix.header.bitsPerData);
+                rEndBit = matrix.header.headerSize+(long)bitsPerSize*matrix.height()+(long)matrix.getOffset(row+1)*(matrix.header.bitsPerWidth+matrix.header.bitsPerData);
             }
-            currentBit = matrix.header.headerSize+bitsPerSize*matrix.height() + rStart*(matrix.header.bitsPerWidth+matrix.header.bitsPerData);
+            currentBit = matrix.header.headerSize+(long)bitsPerSize*matrix.height()+(long)rStart*(matrix.header.bitsPerWidth+matrix.header.bitsPerData);
         }
 
         public boolean hasNext(){
@@ -137,11 +230,11 @@ public class CRSMatrix<E> extends Matrix<E> {
             }
             int bitsPerWidth = matrix.header.bitsPerWidth;
             int bitsPerData = matrix.header.bitsPerData;
-            int actualC = encodedMatrix.getBits(currentBit,bitsPerWidth,matrix.intDecoder);
+            int actualC = (int)encodedMatrix.getBitsAsLong(currentBit,bitsPerWidth);
             while(currentC<readFrame.xPos){
                 if(actualC<readFrame.xPos&&currentBit+(bitsPerData+bitsPerWidth)<rEndBit){
                     currentBit+=(bitsPerWidth+bitsPerData);
-                    actualC = encodedMatrix.getBits(currentBit,bitsPerWidth,matrix.intDecoder);
+                    actualC = (int)encodedMatrix.getBitsAsLong(currentBit,bitsPerWidth);
                 }
                 currentC++;
             }
@@ -154,4 +247,80 @@ public class CRSMatrix<E> extends Matrix<E> {
             return new DataPoint<>(data,currentR,currentC++);
         }
     }
+
+    private static class SparseRowIterator<V> implements Iterator<DataPoint<V>>{
+
+        private final CRSMatrix<V> matrix;
+        private final Quadrant readFrame;
+        private final long dataStart;
+        private final int entryBits;
+        private int row, found;
+        private long currentBit, endBit, dataIndex;
+        private boolean ready;
+
+        private SparseRowIterator(CRSMatrix<V> matrix, Quadrant readFrame){
+            this.matrix = matrix;
+            this.readFrame = readFrame;
+            int bitsPerSize = Main.logBaseCeil(matrix.size()+1,2);
+            dataStart = matrix.header.headerSize+(long)bitsPerSize*matrix.height();
+            entryBits = matrix.header.bitsPerWidth+matrix.header.bitsPerData;
+            row = readFrame.yPos-1;
+        }
+
+        private void setUpRow(){
+            int start = matrix.getOffset(row);
+            if(row==matrix.height()-1){
+                endBit = matrix.encodedMatrix.size();
+            }else{
+                endBit = dataStart+(long)matrix.getOffset(row+1)*entryBits;
+            }
+            currentBit = dataStart+(long)start*entryBits;
+            int low = 0, high = (int)Math.max(0,(endBit-currentBit)/entryBits);
+            while(low<high){
+                int mid = (low+high)>>>1;
+                if(matrix.encodedMatrix.getBitsAsLong(currentBit+(long)mid*entryBits,matrix.header.bitsPerWidth)<readFrame.xPos){
+                    low = mid+1;
+                }else{
+                    high = mid;
+                }
+            }
+            currentBit+=(long)low*entryBits;
+        }
+
+        private void advance(){
+            MemoryController encodedMatrix = matrix.encodedMatrix;
+            int bitsPerWidth = matrix.header.bitsPerWidth;
+            while(!ready){
+                if(currentBit>=endBit){
+                    if(row+1>=readFrame.yPos+readFrame.height){
+                        return;
+                    }
+                    row++;
+                    setUpRow();
+                    continue;
+                }
+                found = (int)encodedMatrix.getBitsAsLong(currentBit,bitsPerWidth);
+                if(found>=readFrame.xPos+readFrame.width){
+                    currentBit = endBit;
+                    continue;
+                }
+                dataIndex = currentBit+bitsPerWidth;
+                currentBit+=entryBits;
+                ready = true;
+            }
+        }
+
+        public boolean hasNext(){
+            advance();
+            return ready;
+        }
+
+        public DataPoint<V> next(){
+            if(!hasNext()){
+                throw new NoSuchElementException("Iterator has no more elements");
+            }
+            ready = false;
+            return new DataPoint<>(matrix.encodedMatrix.getBits(dataIndex,matrix.header.bitsPerData,matrix.bitDecoder),row,found);
+        }
+    }
 }
@@ -20,4 +20,6 @@ public interface CacheManager<K,V> {
     Collection<V> values();
 
     void improveItem(K key);
+
+    void clear();
 }
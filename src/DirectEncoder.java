@@ -4,7 +4,8 @@ import java.util.function.BiFunction;
 public class DirectEncoder<E> implements MatrixEncoder<E> {
 
     private E[][] matrix;
-    private int bitsPerData, refSize, dataSize, headerSize;
+    private int bitsPerData, headerSize;
+    private long refSize, dataSize;
     private BiFunction<E,Integer,byte[]> encoder;
     private BiFunction<byte[],Integer,E> decoder;
 
@@ -19,11 +20,11 @@ public class DirectEncoder<E> implements MatrixEncoder<E> {
         return "Direct";
     }
 
-    public int refSize() {
+    public long refSize() {
         return refSize;
     }
 
-    public int dataSize() {
+    public long dataSize() {
         return dataSize;
     }
 
@@ -66,7 +67,7 @@ public class DirectEncoder<E> implements MatrixEncoder<E> {
                 countMap.put(matrix[r][c], val);
             }
         }
-        dataSize = bitsPerData * height * width;
+        dataSize = (long)bitsPerData*height*width;
         BiFunction<Integer,Integer,byte[]> intEncoder = BitEncoders.intEncoder;
         writer.writeBits(8,bitsPerData,intEncoder);
         writer.writeBits(bitsPerData,defaultItem,encoder);
@@ -108,6 +109,16 @@ public class DirectEncoder<E> implements MatrixEncoder<E> {
     }
 
     public static <V> V[][] decodeMatrix(MemoryController controller, BiFunction<byte[],Integer,V> decoder) {
+        MatrixVisitor.DenseCollector<V> collector = new MatrixVisitor.DenseCollector<>();
+        decode(controller,decoder,collector);
+        return collector.matrix;
+    }
+
+    public void decode(MemoryController controller, MatrixVisitor<E> visitor){
+        decode(controller,decoder,visitor);
+    }
+
+    public static <V> void decode(MemoryController controller, BiFunction<byte[],Integer,V> decoder, MatrixVisitor<V> visitor){
         MemoryController.MemoryBitInputStream input = controller.inputStream();
         BiFunction<byte[],Integer,Integer> intDecoder = BitEncoders.intDecoder;
         int bitsPerData = input.readBits(8,intDecoder);
@@ -116,13 +127,12 @@ public class DirectEncoder<E> implements MatrixEncoder<E> {
         int height = input.readBits(heightBits,intDecoder);
         int widthBits = input.readBits(5,intDecoder)+1;
         int width = input.readBits(widthBits,intDecoder);
-        V[][] matrix = (V[][])new Object[height][width];
+        visitor.start(height,width);
         for(int r = 0; r<height; r++){
             for(int c = 0; c<width; c++){
-                matrix[r][c] = input.readBits(bitsPerData,decoder);
+                visitor.visit(r,c,input.readBits(bitsPerData,decoder));
             }
         }
-        return matrix;
     }
 
 }
@@ -1,6 +1,9 @@
 import java.io.File;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
+import java.util.function.LongToDoubleFunction;
 
 public class DirectMatrix<E> extends Matrix<E> {
 
@@ -39,7 +42,7 @@ public class DirectMatrix<E> extends Matrix<E> {
         ).encodeMatrix(new MemoryController(source)),bitEncoder,bitDecoder);
     }
 
-    public int estimateBitSize() {
+    public long estimateBitSize() {
         return encodedMatrix.size();
     }
 
@@ -48,7 +51,7 @@ public class DirectMatrix<E> extends Matrix<E> {
     }
 
     public E get(int r, int c) {
-        int rawIndex = width() * r + c;
+        long rawIndex = (long)width() * r + c;
         int bpd = header.bitsPerData;
         rawIndex *= bpd;
         return encodedMatrix.getBits(
@@ -74,8 +77,35 @@ public class DirectMatrix<E> extends Matrix<E> {
         return DirectEncoder.decodeMatrix(encodedMatrix,bitDecoder);
     }
 
+    public void visit(MatrixVisitor<E> visitor){
+        DirectEncoder.decode(encodedMatrix,bitDecoder,visitor);
+    }
+
+    public void multiply(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool){
+        double defaultValue = startProduct(x,y,values,transpose,header);
+        int bitsPerData = header.bitsPerData;
+        long currentBit = header.headerSize;
+        for(int r = 0; r<height(); r++){
+            for(int c = 0; c<width(); c++){
+                long bits = encodedMatrix.getBitsAsLong(currentBit,bitsPerData);
+                currentBit+=bitsPerData;
+                if(bits!=header.defaultBits){
+                    double value = values.applyAsDouble(bits)-defaultValue;
+                    if(transpose){
+                        y[c]+=value*x[r];
+                    }else{
+                        y[r]+=value*x[c];
+                    }
+                }
+            }
+        }
+    }
+
     public Iterator<DataPoint<E>> iterator(int r, int c, int h, int w, IteratorType type){
         Quadrant toIterate = new Quadrant(r,c,h,w);
+        if(type==IteratorType.NON_DEFAULT){
+            return new DirectMatrix.SparseDirectIterator<>(this, toIterate);
+        }
         return new DirectMatrix.DirectIterator<>(this, toIterate,type);
     }
 
@@ -114,4 +144,60 @@ public class DirectMatrix<E> extends Matrix<E> {
             return returned;
         }
     }
+
+    private static class SparseDirectIterator<V> implements Iterator<DataPoint<V>>{
+
+        private final DirectMatrix<V> matrix;
+        private final Quadrant readFrame;
+        private int row, column;
+        private boolean ready;
+
+        private SparseDirectIterator(DirectMatrix<V> matrix, Quadrant readFrame){
+            this.matrix = matrix;
+            this.readFrame = readFrame;
+            row = readFrame.yPos;
+            column = readFrame.xPos;
+        }
+
+        private boolean isDefault(){
+            StandardHeader<V> header = matrix.header;
+            int bpd = header.bitsPerData;
+            long dataIndex = header.headerSize+((long)row*matrix.width()+column)*bpd;
+            if(bpd<=64){
+                return matrix.encodedMatrix.getBitsAsLong(dataIndex,bpd)==header.defaultBits;
+            }
+            return header.defaultItem.equals(matrix.encodedMatrix.getBits(dataIndex,bpd,matrix.bitDecoder));
+        }
+
+        private void advance(){
+            while(!ready&&readFrame.contains(row,column)){
+                if(!isDefault()){
+                    ready = true;
+                    return;
+                }
+                if(++column==readFrame.xPos+readFrame.width){
+                    row++;
+                    column = readFrame.xPos;
+                }
+            }
+        }
+
+        public boolean hasNext(){
+            advance();
+            return ready;
+        }
+
+        public DataPoint<V> next(){
+            if(!hasNext()){
+                throw new NoSuchElementException("Iterator has no more elements");
+            }
+            ready = false;
+            DataPoint<V> returned = new DataPoint<>(matrix.get(row,column),row,column);
+            if(++column==readFrame.xPos+readFrame.width){
+                row++;
+                column = readFrame.xPos;
+            }
+            return returned;
+        }
+    }
 }
@@ -3,10 +3,10 @@ import java.io.*;
 public class DiskByteArray implements ByteArray{
 
     private RandomAccessFile file;
-    private final int size;
+    private final long size;
     private final File source;
 
-    public DiskByteArray(int size, File source){
+    public DiskByteArray(long size, File source){
         this.source = source;
         this.size = size;
         try{
@@ -16,9 +16,10 @@ public class DiskByteArray implements ByteArray{
             source.getParentFile().mkdirs();
             source.createNewFile();
             file = new RandomAccessFile(source,"rw");
-            FileOutputStream stream = new FileOutputStream(source);
-            stream.write(new byte[size]);
-            stream.close();
+            byte[] zeros = new byte[(int)Math.min(size,1<<16)];
+            for(long written = 0; written<size; written+=zeros.length){
+                file.write(zeros,0,(int)Math.min(zeros.length,size-written));
+            }
         }catch(Exception e){
             e.printStackTrace();
             throw new RuntimeException("Something went wrong...");
@@ -29,11 +30,11 @@ public class DiskByteArray implements ByteArray{
         return source;
     }
 
-    public int size(){
+    public long size(){
         return size;
     }
 
-    public byte get(int i){
+    public byte get(long i){
         try{
             file.seek(i);
             return file.readByte();
@@ -42,7 +43,7 @@ public class DiskByteArray implements ByteArray{
         }
     }
 
-    public void set(int i, byte value){
+    public void set(long i, byte value){
         try{
             file.seek(i);
             file.writeByte(value);
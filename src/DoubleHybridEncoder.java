@@ -1,6 +1,5 @@
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.function.BiFunction;
 
 public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
@@ -9,10 +8,14 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
     private BiFunction<E,Integer,byte[]> encoder;
     private BiFunction<byte[],Integer,E> decoder;
     private E defaultItem;
-    private MemoryController controller;
     private MemoryController.MemoryBitOutputStream writer;
-    private static int refSize, dataSize, headerSize;
-    private int bitsPerData, longestX;
+    private static int headerSize;
+    private static long refSize, dataSize;
+    private SummedAreaTable nonDefault;
+    private int[] ends;
+    private byte[] modes;
+    private int bitsPerData, longestX, frames, nextFrame;
+    private static final byte qteMode = 0, denseMode = 1;
 
     public DoubleHybridEncoder(E[][] m, int bitsPerData, BiFunction<E,Integer,byte[]> e, BiFunction<byte[],Integer,E> d){
         matrix = m;
@@ -43,11 +46,11 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
         System.out.println("Ref size: "+refSize+" bits");
     }
 
-    public int refSize(){
+    public long refSize(){
         return refSize;
     }
 
-    public int dataSize(){
+    public long dataSize(){
         return dataSize;
     }
 
@@ -56,7 +59,6 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
     }
 
     public MemoryController encodeMatrix(MemoryController controller){
-        this.controller = controller;
         writer = controller.outputStream();
         refSize = 0;
         dataSize = 0;
@@ -102,7 +104,16 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
         writer.writeBits(widthBits,width,intEncoder);
         //headerSize=8+bitsPerData+5+heightBits+5+widthBits;
         if((longestX>1||matrix.length>1)&&(maxCount!=totalCount)){
-            doPathSetup(new Quadrant(0,0,height,width));
+            nonDefault = new SummedAreaTable(height,width,(r,c)->c<matrix[r].length&&!matrix[r][c].equals(defaultItem));
+            ends = new int[16];
+            modes = new byte[16];
+            frames = 0;
+            plan(0,0,height,width);
+            nextFrame = 0;
+            emit(0,0,height,width);
+            nonDefault = null;
+            ends = null;
+            modes = null;
             //controller.delete(lastData,controller.size());
         }else{
             writer.writeBit(false);
@@ -117,79 +128,79 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
         return null;
     }
 
-    private LinkedList<DataPoint<E>> encodeHelper(Quadrant frame){
-        int yPos = frame.yPos, xPos = frame.xPos;
-        LinkedList<DataPoint<E>> foundData = new LinkedList<>();
-        if(yPos>=matrix.length){
-            return foundData;
+    private long plan(int yPos, int xPos, int height, int width){
+        int count = nonDefault.count(yPos,xPos,height,width);
+        if(height*width<=1){
+            return count==0?1:1+bitsPerData;
         }
-        if(frame.size()<=1){
-            if(xPos>=matrix[yPos].length){
-                if(xPos<longestX){
-                    writer.writeBit(false);
-                }
-                return foundData;
-            }
-            E item = matrix[yPos][xPos];
-            if(item.equals(defaultItem)){
-                writer.writeBit(false);
-                return foundData;
-            }
-            writer.writeBit(true);
-            writer.writeBits(bitsPerData,item,encoder);
-            foundData.add(new DataPoint<>(item,yPos,xPos));
-        }else{
-            for(Quadrant child : frame.getChildren()){
-                foundData.addAll(doPathSetup(child));
+        if(count==0){
+            return 2;
+        }
+        int frame = frames++;
+        if(frame==ends.length){
+            ends = Arrays.copyOf(ends,frame*2);
+            modes = Arrays.copyOf(modes,frame*2);
+        }
+        long added = 2;
+        int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+        added+=plan(yPos,xPos,nHeight,nWidth);
+        if(width>nWidth){
+            added+=plan(yPos,xPos+nWidth,nHeight,width-nWidth);
+        }
+        if(height>nHeight){
+            added+=plan(yPos+nHeight,xPos,height-nHeight,nWidth);
+            if(width>nWidth){
+                added+=plan(yPos+nHeight,xPos+nWidth,height-nHeight,width-nWidth);
             }
         }
-        return foundData;
+        long dataSize = (long)height*width*bitsPerData+2;
+        ends[frame] = frames;
+        if(added>=dataSize){
+            modes[frame] = denseMode;
+            return dataSize-1;
+        }
+        modes[frame] = qteMode;
+        return added;
     }
 
-    private LinkedList<DataPoint<E>> doPathSetup(Quadrant frame){
-        int prevLength = controller.size();
-        if(frame.size()>1){
+    private void emit(int yPos, int xPos, int height, int width){
+        int count = nonDefault.count(yPos,xPos,height,width);
+        if(height*width<=1){
+            writer.writeBit(count>0);
+            if(count>0){
+                writer.writeBits(bitsPerData,matrix[yPos][xPos],encoder);
+            }
+            return;
+        }
+        if(count==0){
             writer.writeBit(false);
-            writer.writeBit(true);
+            writer.writeBit(false);
+            return;
         }
-        LinkedList<DataPoint<E>> foundData = encodeHelper(frame);
-        if(frame.size()>1){
-            if(foundData.size()==0){
-                controller.delete(prevLength+1,controller.size());
-                writer.writeBit(false);
-            }else{
-                int added = controller.size()-prevLength;
-                int dataSize = frame.size()*bitsPerData+2;
-                if(added>=dataSize){
-                    controller.delete(prevLength,controller.size());
-                    writer.writeBit(true);
-                    final int startBit = controller.size();
-                    Iterator<DataPoint<E>> pointIter = foundData.iterator();
-                    DataPoint<E> currentPoint = pointIter.next();
-                    int index = 0, pointIndex = 0;
-                    while(pointIndex<foundData.size() || index<frame.size()){
-                        int currentIndex = (currentPoint.row-frame.yPos)*frame.width+currentPoint.column-frame.xPos;
-                        boolean iterIndex = index<frame.size();
-                        if(iterIndex){
-                            writer.writeBits(bitsPerData,defaultItem,encoder);
-                        }
-                        if(index>=currentIndex){
-                            controller.setBits(startBit+currentIndex*bitsPerData,bitsPerData,currentPoint.data,encoder);
-                            if(pointIter.hasNext()){
-                                currentPoint = pointIter.next();
-                            }else{
-                                currentPoint = new DataPoint<>(null,frame.yPos+frame.height,frame.xPos+frame.width);
-                            }
-                            pointIndex++;
-                        }
-                        if(iterIndex){
-                            index++;
-                        }
-                    }
+        int frame = nextFrame++;
+        if(modes[frame]==denseMode){
+            nextFrame = ends[frame];
+            writer.writeBit(true);
+            for(int r = yPos; r<yPos+height; r++){
+                for(int c = xPos; c<xPos+width; c++){
+                    writer.writeBits(bitsPerData,c<matrix[r].length?matrix[r][c]:defaultItem,encoder);
                 }
             }
+            return;
+        }
+        writer.writeBit(false);
+        writer.writeBit(true);
+        int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+        emit(yPos,xPos,nHeight,nWidth);
+        if(width>nWidth){
+            emit(yPos,xPos+nWidth,nHeight,width-nWidth);
+        }
+        if(height>nHeight){
+            emit(yPos+nHeight,xPos,height-nHeight,nWidth);
+            if(width>nWidth){
+                emit(yPos+nHeight,xPos+nWidth,height-nHeight,width-nWidth);
+            }
         }
-        return foundData;
     }
 
     public E[][] decodeMatrix(MemoryController controller){
@@ -197,6 +208,16 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
     }
 
     public <V> V[][] decodeMatrix(MemoryController controller, BiFunction<byte[],Integer,V> decoder){
+        MatrixVisitor.DenseCollector<V> collector = new MatrixVisitor.DenseCollector<>();
+        decode(controller,decoder,collector);
+        return collector.matrix;
+    }
+
+    public void decode(MemoryController controller, MatrixVisitor<E> visitor){
+        decode(controller,decoder,visitor);
+    }
+
+    public <V> void decode(MemoryController controller, BiFunction<byte[],Integer,V> decoder, MatrixVisitor<V> visitor){
         MemoryController.MemoryBitInputStream input = controller.inputStream();
         BiFunction<byte[],Integer,Integer> intDecoder = BitEncoders.intDecoder;
         int bitsPerData = input.readBits(8,intDecoder);
@@ -207,8 +228,8 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
         int width = input.readBits(widthBits,intDecoder);
         headerSize=8+bitsPerData+5+heightBits+5+widthBits;
         dataSize = 0;
+        visitor.start(height,width);
         Quadrant current = new Quadrant(0,0,height,width);
-        V[][] matrix = (V[][])new Object[height][width];
         double crsCount = 0, unCount = 0, qteCount = 0;
         while(current!=null&&input.hasNext()){
             boolean readMode = current.width<=1&&current.height<=1;
@@ -216,7 +237,7 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
                 unCount++;
                 for(int r = 0; r<current.height;r++){
                     for(int c = 0; c<current.width; c++){
-                        matrix[current.yPos+r][current.xPos+c] = input.readBits(bitsPerData,decoder);
+                        visitor.visit(current.yPos+r,current.xPos+c,input.readBits(bitsPerData,decoder));
                         dataSize+=bitsPerData;
                     }
                 }
@@ -226,29 +247,20 @@ public class DoubleHybridEncoder<E> implements MatrixEncoder<E> {
                 if(input.readBit()){
                     if(readMode){
                         V data = input.readBits(bitsPerData,decoder);
-                        matrix[current.yPos][current.xPos] = data;
+                        visitor.visit(current.yPos,current.xPos,data);
                         dataSize+=bitsPerData;
                     }
                     current = current.getNext();
                 }else{
+                    visitor.visitDefault(current.yPos,current.xPos,current.height,current.width,defaultItem);
                     current = current.skipChildren();
                 }
             }
         }
-        refSize = input.totalRead()-dataSize-headerSize;
-        double total = qteCount+crsCount+unCount;
-        //System.out.println("QTE: "+(qteCount/total));
-        //System.out.println("CRS: "+(crsCount/total));
-        //.out.println("UNE: "+(unCount/total));
-        //System.out.println(refSize+" "+input.totalRead());
-        //System.out.println();
-        for(int r = 0; r<height;r++){
-            for(int c = 0; c<width;c++){
-                if(matrix[r][c]==null){
-                    matrix[r][c] = defaultItem;
-                }
-            }
+        while(current!=null){
+            visitor.visitDefault(current.yPos,current.xPos,current.height,current.width,defaultItem);
+            current = current.skipChildren();
         }
-        return matrix;
+        refSize = input.totalRead()-dataSize-headerSize;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+import java.io.File;
+
+public class DoubleQuadrantTreeMatrix extends QuadrantTreeMatrix<Double>{
+
+    public DoubleQuadrantTreeMatrix(MemoryController encodedMatrix, double cachePercent){
+        super(encodedMatrix,BitEncoders.doubleEncoder,BitEncoders.doubleDecoder,cachePercent);
+    }
+
+    public DoubleQuadrantTreeMatrix(double[][] matrix, double cachePercent){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix).encodeMatrix(new MemoryController(defaultStorage)),cachePercent);
+    }
+
+    public DoubleQuadrantTreeMatrix(double[][] matrix, double cachePercent, File source){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix).encodeMatrix(new MemoryController(source)),cachePercent);
+    }
+
+    public double getDouble(int r, int c){
+        return Double.longBitsToDouble(getRaw(r,c));
+    }
+
+    public double setDouble(int r, int c, double value){
+        setRaw(r,c,Double.doubleToRawLongBits(value));
+        return value;
+    }
+
+    public void multiply(double[] x, double[] y){
+        multiply(x,y,BitEncoders.doubleValues);
+    }
+
+    public void multiplyTransposed(double[] x, double[] y){
+        multiplyTransposed(x,y,BitEncoders.doubleValues);
+    }
+
+    public DoubleQuadrantTreeMatrix multiply(DoubleQuadrantTreeMatrix other){
+        return new DoubleQuadrantTreeMatrix(multiply(other,BitEncoders.doubleValues,Double::doubleToRawLongBits,new MemoryController(defaultStorage),null),cachePercent);
+    }
+
+    public DoubleCursor cursor(){
+        return cursor(0,0,height(),width());
+    }
+
+    public DoubleCursor cursor(int r, int c, int h, int w){
+        return new DoubleCursor(this,new Quadrant(r,c,h,w));
+    }
+
+    public static class DoubleCursor extends TreeCursor{
+
+        private DoubleCursor(DoubleQuadrantTreeMatrix matrix, Quadrant readFrame){
+            super(matrix,readFrame);
+        }
+
+        public double value(){
+            return Double.longBitsToDouble(bits());
+        }
+    }
+}
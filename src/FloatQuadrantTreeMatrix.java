@@ -0,0 +1,56 @@
+import java.io.File;
+
+public class FloatQuadrantTreeMatrix extends QuadrantTreeMatrix<Float>{
+
+    public FloatQuadrantTreeMatrix(MemoryController encodedMatrix, double cachePercent){
+        super(encodedMatrix,BitEncoders.floatEncoder,BitEncoders.floatDecoder,cachePercent);
+    }
+
+    public FloatQuadrantTreeMatrix(float[][] matrix, double cachePercent){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix).encodeMatrix(new MemoryController(defaultStorage)),cachePercent);
+    }
+
+    public FloatQuadrantTreeMatrix(float[][] matrix, double cachePercent, File source){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix).encodeMatrix(new MemoryController(source)),cachePercent);
+    }
+
+    public float getFloat(int r, int c){
+        return Float.intBitsToFloat((int)getRaw(r,c));
+    }
+
+    public float setFloat(int r, int c, float value){
+        setRaw(r,c,Float.floatToRawIntBits(value));
+        return value;
+    }
+
+    public void multiply(float[] x, float[] y){
+        multiply(x,y,BitEncoders.floatValues,false,null);
+    }
+
+    public void multiplyTransposed(float[] x, float[] y){
+        multiply(x,y,BitEncoders.floatValues,true,null);
+    }
+
+    public FloatQuadrantTreeMatrix multiply(FloatQuadrantTreeMatrix other){
+        return new FloatQuadrantTreeMatrix(multiply(other,BitEncoders.floatValues,(value)->Float.floatToRawIntBits((float)value),new MemoryController(defaultStorage),null),cachePercent);
+    }
+
+    public FloatCursor cursor(){
+        return cursor(0,0,height(),width());
+    }
+
+    public FloatCursor cursor(int r, int c, int h, int w){
+        return new FloatCursor(this,new Quadrant(r,c,h,w));
+    }
+
+    public static class FloatCursor extends TreeCursor{
+
+        private FloatCursor(FloatQuadrantTreeMatrix matrix, Quadrant readFrame){
+            super(matrix,readFrame);
+        }
+
+        public float value(){
+            return Float.intBitsToFloat((int)bits());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+public class FrameStack {
+
+    private final int rootHeight, rootWidth;
+    private final int[] ys, xs, heights, widths, quadrants;
+    private final long[] indexes;
+    private int depth;
+
+    public FrameStack(int height, int width){
+        if(height<=0||width<=0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        rootHeight = height;
+        rootWidth = width;
+        int levels = maxDepth(height,width)+1;
+        ys = new int[levels];
+        xs = new int[levels];
+        heights = new int[levels];
+        widths = new int[levels];
+        quadrants = new int[levels];
+        indexes = new long[levels];
+        reset();
+    }
+
+    public static int maxDepth(int height, int width){
+        int depth = 0;
+        for(int h = height, w = width; h>1||w>1; h = h-h/2, w = w-w/2){
+            depth++;
+        }
+        return depth;
+    }
+
+    public void reset(){
+        depth = 0;
+        ys[0] = 0;
+        xs[0] = 0;
+        heights[0] = rootHeight;
+        widths[0] = rootWidth;
+        quadrants[0] = -1;
+    }
+
+    public void copyFrom(FrameStack other){
+        if(other.rootHeight!=rootHeight||other.rootWidth!=rootWidth){
+            throw new IllegalArgumentException("Frames are from different matrices");
+        }
+        depth = other.depth;
+        for(int i = 0; i<=depth; i++){
+            ys[i] = other.ys[i];
+            xs[i] = other.xs[i];
+            heights[i] = other.heights[i];
+            widths[i] = other.widths[i];
+            quadrants[i] = other.quadrants[i];
+            indexes[i] = other.indexes[i];
+        }
+    }
+
+    public boolean done(){
+        return depth<0;
+    }
+
+    public int depth(){
+        return depth;
+    }
+
+    public int y(){
+        return ys[depth];
+    }
+
+    public int x(){
+        return xs[depth];
+    }
+
+    public int height(){
+        return heights[depth];
+    }
+
+    public int width(){
+        return widths[depth];
+    }
+
+    public int quadrant(){
+        return quadrants[depth];
+    }
+
+    public int size(){
+        return (int)Math.min(Integer.MAX_VALUE,(long)heights[depth]*widths[depth]);
+    }
+
+    public long hash(){
+        return (long)ys[depth]*rootWidth+xs[depth];
+    }
+
+    public long hash(int level){
+        return (long)ys[level]*rootWidth+xs[level];
+    }
+
+    public int y(int level){
+        return ys[level];
+    }
+
+    public int x(int level){
+        return xs[level];
+    }
+
+    public int height(int level){
+        return heights[level];
+    }
+
+    public int width(int level){
+        return widths[level];
+    }
+
+    public int quadrant(int level){
+        return quadrants[level];
+    }
+
+    public long index(){
+        return indexes[depth];
+    }
+
+    public long index(int level){
+        return indexes[level];
+    }
+
+    public void setIndex(long index){
+        indexes[depth] = index;
+    }
+
+    public boolean contains(int r, int c){
+        return contains(depth,r,c);
+    }
+
+    public boolean contains(int level, int r, int c){
+        return r>=ys[level]&&r<ys[level]+heights[level]&&c>=xs[level]&&c<xs[level]+widths[level];
+    }
+
+    public boolean containsFrame(int y, int x, int h, int w){
+        return y>=ys[depth]&&x>=xs[depth]&&y+h<=ys[depth]+heights[depth]&&x+w<=xs[depth]+widths[depth];
+    }
+
+    public boolean isInside(int y, int x, int h, int w){
+        return ys[depth]>=y&&xs[depth]>=x&&ys[depth]+heights[depth]<=y+h&&xs[depth]+widths[depth]<=x+w;
+    }
+
+    public int children(){
+        return widths[depth]==1||heights[depth]==1?2:4;
+    }
+
+    public int quadrantOf(int r, int c){
+        return quadrantOf(depth,r,c);
+    }
+
+    public int quadrantOf(int level, int r, int c){
+        return (r>=ys[level]+Math.max(1,heights[level]/2)?2:0)+(c>=xs[level]+Math.max(1,widths[level]/2)?1:0);
+    }
+
+    public boolean hasChild(int level, int quadrant){
+        int nHeight = Math.max(1,heights[level]/2), nWidth = Math.max(1,widths[level]/2);
+        return ((quadrant&2)==0||heights[level]>nHeight)&&((quadrant&1)==0||widths[level]>nWidth);
+    }
+
+    public long childHash(int level, int quadrant){
+        int nHeight = Math.max(1,heights[level]/2), nWidth = Math.max(1,widths[level]/2);
+        int h = (quadrant&2)==0?nHeight:heights[level]-nHeight;
+        int w = (quadrant&1)==0?nWidth:widths[level]-nWidth;
+        if(h<=0||w<=0){
+            return -1;
+        }
+        int y = (quadrant&2)==0?ys[level]:ys[level]+nHeight;
+        int x = (quadrant&1)==0?xs[level]:xs[level]+nWidth;
+        return (long)y*rootWidth+x;
+    }
+
+    private boolean setChild(int level, int parent, int quadrant){
+        int nHeight = Math.max(1,heights[parent]/2), nWidth = Math.max(1,widths[parent]/2);
+        int h = (quadrant&2)==0?nHeight:heights[parent]-nHeight;
+        int w = (quadrant&1)==0?nWidth:widths[parent]-nWidth;
+        if(h<=0||w<=0){
+            return false;
+        }
+        ys[level] = (quadrant&2)==0?ys[parent]:ys[parent]+nHeight;
+        xs[level] = (quadrant&1)==0?xs[parent]:xs[parent]+nWidth;
+        heights[level] = h;
+        widths[level] = w;
+        quadrants[level] = quadrant;
+        return true;
+    }
+
+    public boolean pushChild(int quadrant){
+        if(setChild(depth+1,depth,quadrant)){
+            depth++;
+            return true;
+        }
+        return false;
+    }
+
+    public void pushChildContaining(int r, int c){
+        pushChild(quadrantOf(r,c));
+    }
+
+    public boolean toSibling(int quadrant){
+        return depth>0&&setChild(depth,depth-1,quadrant);
+    }
+
+    public boolean nextSibling(){
+        for(int q = quadrants[depth]+1; depth>0&&q<4; q++){
+            if(toSibling(q)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean prevSibling(){
+        for(int q = quadrants[depth]-1; depth>0&&q>=0; q--){
+            if(toSibling(q)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void pop(){
+        depth--;
+    }
+
+    public void next(){
+        if(size()<=1){
+            skipChildren();
+        }else{
+            pushChild(0);
+        }
+    }
+
+    public void skipChildren(){
+        while(depth>0){
+            if(nextSibling()){
+                return;
+            }
+            depth--;
+        }
+        depth = -1;
+    }
+
+    public Quadrant toQuadrant(){
+        return new Quadrant(ys[depth],xs[depth],heights[depth],widths[depth]);
+    }
+
+    public String toString(){
+        return depth<0?"done":"("+ys[depth]+", "+xs[depth]+", "+heights[depth]+", "+widths[depth]+")";
+    }
+}
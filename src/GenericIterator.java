@@ -5,7 +5,8 @@ import java.util.NoSuchElementException;
 public class GenericIterator<V> implements Iterator<DataPoint<V>> {
     private final HashMap<Integer,V> cache;
     private final Iterator<DataPoint<V>> defaultIterator;
-    private int readCount, currentR, currentC;
+    private int currentR, currentC;
+    private long readCount;
     private final Quadrant readFrame;
     private final IteratorType type;
 
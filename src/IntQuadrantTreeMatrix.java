@@ -0,0 +1,44 @@
+import java.io.File;
+
+public class IntQuadrantTreeMatrix extends QuadrantTreeMatrix<Integer>{
+
+    public IntQuadrantTreeMatrix(MemoryController encodedMatrix, double cachePercent){
+        super(encodedMatrix,BitEncoders.intEncoder,BitEncoders.intDecoder,cachePercent);
+    }
+
+    public IntQuadrantTreeMatrix(int[][] matrix, int bitsPerData, double cachePercent){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix,bitsPerData).encodeMatrix(new MemoryController(defaultStorage)),cachePercent);
+    }
+
+    public IntQuadrantTreeMatrix(int[][] matrix, int bitsPerData, double cachePercent, File source){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix,bitsPerData).encodeMatrix(new MemoryController(source)),cachePercent);
+    }
+
+    public int getInt(int r, int c){
+        return (int)getRaw(r,c);
+    }
+
+    public int setInt(int r, int c, int value){
+        setRaw(r,c,value);
+        return value;
+    }
+
+    public IntCursor cursor(){
+        return cursor(0,0,height(),width());
+    }
+
+    public IntCursor cursor(int r, int c, int h, int w){
+        return new IntCursor(this,new Quadrant(r,c,h,w));
+    }
+
+    public static class IntCursor extends TreeCursor{
+
+        private IntCursor(IntQuadrantTreeMatrix matrix, Quadrant readFrame){
+            super(matrix,readFrame);
+        }
+
+        public int value(){
+            return (int)bits();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 enum IteratorType{
     BY_ROW,
     BY_COL,
-    DEFAULT
+    DEFAULT,
+    NON_DEFAULT
 }
\ No newline at end of file
@@ -61,6 +61,13 @@ public class LRUCache<K,V> implements CacheManager<K,V> {
         return null;
     }
 
+    public void clear(){
+        for(CacheLinkedList<Pair<K,V>>.ListNode node : lookup.values()){
+            controller.remove(node);
+        }
+        lookup.clear();
+    }
+
     public Set<K> keySet(){
         return lookup.keySet();
     }
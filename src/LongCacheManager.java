@@ -0,0 +1,40 @@
+public interface LongCacheManager extends CacheManager<Long,Long> {
+
+    long missing = -1;
+
+    void putLong(long key, long value);
+
+    void removeLong(long key);
+
+    long getLong(long key);
+
+    long getLongNoCache(long key);
+
+    void improveLong(long key);
+
+    default void put(Long key, Long value){
+        putLong(key,value);
+    }
+
+    default void remove(Long key){
+        removeLong(key);
+    }
+
+    default Long get(Long key){
+        long value = getLong(key);
+        return value!=missing?value:null;
+    }
+
+    default Long getNoCache(Long key){
+        long value = getLongNoCache(key);
+        return value!=missing?value:null;
+    }
+
+    default boolean contains(Long key){
+        return getLongNoCache(key)!=missing;
+    }
+
+    default void improveItem(Long key){
+        improveLong(key);
+    }
+}
@@ -0,0 +1,238 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+public class LongLongLruMap implements LongCacheManager {
+
+    private static final int initialCapacity = 16, maxTableSize = 1<<30, maxCapacity = maxTableSize/2;
+
+    private final int capacity;
+    private int tableMask;
+    private long[] keys, values;
+    private int[] prev, next, table;
+    private int size, head, tail;
+
+    public LongLongLruMap(int capacity){
+        if(capacity<0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        this.capacity = Math.min(capacity,maxCapacity);
+        allocate(Math.min(this.capacity,initialCapacity));
+        head = -1;
+        tail = -1;
+    }
+
+    private static int tableSize(long entries){
+        return (int)Math.min(maxTableSize,Long.highestOneBit(Math.max(2,entries)*2-1)<<1);
+    }
+
+    private void allocate(int length){
+        table = new int[tableSize(length)];
+        tableMask = table.length-1;
+        keys = new long[length];
+        values = new long[length];
+        prev = new int[length];
+        next = new int[length];
+    }
+
+    private void grow(){
+        long[] oldKeys = keys, oldValues = values;
+        int[] oldPrev = prev, oldNext = next;
+        allocate((int)Math.min(capacity,(long)keys.length*2));
+        System.arraycopy(oldKeys,0,keys,0,size);
+        System.arraycopy(oldValues,0,values,0,size);
+        System.arraycopy(oldPrev,0,prev,0,size);
+        System.arraycopy(oldNext,0,next,0,size);
+        for(int entry = 0; entry<size; entry++){
+            int slot = slotOf(keys[entry]);
+            while(table[slot]!=0){
+                slot = (slot+1)&tableMask;
+            }
+            table[slot] = entry+1;
+        }
+    }
+
+    private int slotOf(long key){
+        long hash = key*0x9E3779B97F4A7C15L;
+        return (int)(hash^(hash>>>32))&tableMask;
+    }
+
+    private int find(long key){
+        int slot = slotOf(key);
+        while(table[slot]!=0){
+            if(keys[table[slot]-1]==key){
+                return slot;
+            }
+            slot = (slot+1)&tableMask;
+        }
+        return -1;
+    }
+
+    private void unlink(int entry){
+        if(prev[entry]!=-1){
+            next[prev[entry]] = next[entry];
+        }else{
+            head = next[entry];
+        }
+        if(next[entry]!=-1){
+            prev[next[entry]] = prev[entry];
+        }else{
+            tail = prev[entry];
+        }
+    }
+
+    private void linkLast(int entry){
+        prev[entry] = tail;
+        next[entry] = -1;
+        if(tail!=-1){
+            next[tail] = entry;
+        }else{
+            head = entry;
+        }
+        tail = entry;
+    }
+
+    private void moveToLast(int entry){
+        if(entry!=tail){
+            unlink(entry);
+            linkLast(entry);
+        }
+    }
+
+    public void putLong(long key, long value){
+        if(value<0){
+            throw new IllegalArgumentException("Cached values must not be negative");
+        }
+        int slot = find(key);
+        if(slot!=-1){
+            int entry = table[slot]-1;
+            values[entry] = value;
+            moveToLast(entry);
+            return;
+        }
+        if(capacity==0){
+            return;
+        }
+        if(size==capacity){
+            removeLong(keys[head]);
+        }else if(size==keys.length){
+            grow();
+        }
+        int entry = size++;
+        keys[entry] = key;
+        values[entry] = value;
+        linkLast(entry);
+        slot = slotOf(key);
+        while(table[slot]!=0){
+            slot = (slot+1)&tableMask;
+        }
+        table[slot] = entry+1;
+    }
+
+    public void removeLong(long key){
+        int slot = find(key);
+        if(slot==-1){
+            return;
+        }
+        int entry = table[slot]-1;
+        unlink(entry);
+        deleteSlot(slot);
+        int last = --size;
+        if(entry!=last){
+            keys[entry] = keys[last];
+            values[entry] = values[last];
+            prev[entry] = prev[last];
+            next[entry] = next[last];
+            if(prev[entry]!=-1){
+                next[prev[entry]] = entry;
+            }else{
+                head = entry;
+            }
+            if(next[entry]!=-1){
+                prev[next[entry]] = entry;
+            }else{
+                tail = entry;
+            }
+            table[find(keys[entry])] = entry+1;
+        }
+    }
+
+    private void deleteSlot(int slot){
+        int index = slot;
+        while(true){
+            index = (index+1)&tableMask;
+            int entry = table[index];
+            if(entry==0){
+                break;
+            }
+            int ideal = slotOf(keys[entry-1]);
+            if(((index-ideal)&tableMask)>=((index-slot)&tableMask)){
+                table[slot] = entry;
+                slot = index;
+            }
+        }
+        table[slot] = 0;
+    }
+
+    public long getLong(long key){
+        int slot = find(key);
+        if(slot==-1){
+            return missing;
+        }
+        int entry = table[slot]-1;
+        moveToLast(entry);
+        return values[entry];
+    }
+
+    public long getLongNoCache(long key){
+        int slot = find(key);
+        return slot!=-1?values[table[slot]-1]:missing;
+    }
+
+    public void improveLong(long key){
+        int slot = find(key);
+        if(slot!=-1){
+            moveToLast(table[slot]-1);
+        }
+    }
+
+    public void clear(){
+        allocate(Math.min(capacity,initialCapacity));
+        size = 0;
+        head = -1;
+        tail = -1;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public Set<Long> keySet(){
+        Set<Long> keySet = new HashSet<>();
+        for(int i = 0; i<size; i++){
+            keySet.add(keys[i]);
+        }
+        return keySet;
+    }
+
+    public Collection<Long> values(){
+        ArrayList<Long> valueList = new ArrayList<>();
+        for(int i = 0; i<size; i++){
+            valueList.add(values[i]);
+        }
+        return valueList;
+    }
+
+    public String toString(){
+        StringBuilder builder = new StringBuilder("[");
+        for(int entry = head; entry!=-1; entry = next[entry]){
+            builder.append(keys[entry]).append("=").append(values[entry]);
+            if(next[entry]!=-1){
+                builder.append(", ");
+            }
+        }
+        builder.append("]\nSize,Cap: ").append(size).append(" ").append(capacity).append("\n");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.File;
+
+public class LongQuadrantTreeMatrix extends QuadrantTreeMatrix<Long>{
+
+    public LongQuadrantTreeMatrix(MemoryController encodedMatrix, double cachePercent){
+        super(encodedMatrix,BitEncoders.longEncoder,BitEncoders.longDecoder,cachePercent);
+    }
+
+    public LongQuadrantTreeMatrix(long[][] matrix, int bitsPerData, double cachePercent){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix,bitsPerData).encodeMatrix(new MemoryController(defaultStorage)),cachePercent);
+    }
+
+    public LongQuadrantTreeMatrix(long[][] matrix, int bitsPerData, double cachePercent, File source){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix,bitsPerData).encodeMatrix(new MemoryController(source)),cachePercent);
+    }
+
+    public long getLong(int r, int c){
+        return getRaw(r,c);
+    }
+
+    public long setLong(int r, int c, long value){
+        setRaw(r,c,value);
+        return value;
+    }
+
+    public LongCursor cursor(){
+        return cursor(0,0,height(),width());
+    }
+
+    public LongCursor cursor(int r, int c, int h, int w){
+        return new LongCursor(this,new Quadrant(r,c,h,w));
+    }
+
+    public static class LongCursor extends TreeCursor{
+
+        private LongCursor(LongQuadrantTreeMatrix matrix, Quadrant readFrame){
+            super(matrix,readFrame);
+        }
+
+        public long value(){
+            return bits();
+        }
+    }
+}
@@ -11,8 +11,8 @@ public class Main {
 
     private static final double byteFactor = Math.pow(10,3); //Kilobytes
     private static final double timeFactor = Math.pow(10,6); //Milliseconds
-    private static final String[] schemes = {"QTE","CRS","CCS","DEF","ZIP"};
-    private static final boolean[] needsCache = {true,false,false,false,false};
+    static final String[] schemes = {"QTE","CRS","CCS","DEF","ZIP","BZIP"};
+    private static final boolean[] needsCache = {true,false,false,false,false,false};
 
     private static double bitsToFormat(long bits){
         return roundUpDiv(bits,8)/byteFactor;
@@ -22,7 +22,8 @@ public class Main {
         Scanner in = new Scanner(System.in);
         System.out.println("1: Disk Size Tester");
         System.out.println("2: Read Tester");
-        int type = readInt("Test Type",in,(i)->i>=1&&i<=2);
+        System.out.println("3: Concurrent Read Tester");
+        int type = readInt("Test Type",in,(i)->i>=1&&i<=3);
         System.out.println();
         if(type==1){
             System.out.println("1: QTE");
@@ -31,7 +32,8 @@ public class Main {
             System.out.println("4: CRS");
             System.out.println("5: CCS");
             System.out.println("6: ZIP");
-            type = readInt("Encoding Type",in,(i)->i>=1&&i<=6);
+            System.out.println("7: Block ZIP");
+            type = readInt("Encoding Type",in,(i)->i>=1&&i<=7);
             System.out.println();
             diskSizeTester(getEncoder(type));
         }else if(type==2){
@@ -47,6 +49,10 @@ public class Main {
             double cachePercent = needsCache[type-1]?readDouble("Cache %",in,(i)->i>=0&&i<=1):0;
             System.out.println();
             readWriteTester(cachePercent, type, loc==2);
+        }else if(type==3){
+            double cachePercent = readDouble("Cache %",in,(i)->i>=0&&i<=1);
+            System.out.println();
+            concurrentReadTester(cachePercent);
         }
     }
 
@@ -90,6 +96,12 @@ public class Main {
                     enc,
                     dec
             ));
+            case 7 -> new BlockZipEncoder<>(new DirectEncoder<>(
+                    null,
+                    8,
+                    enc,
+                    dec
+            ));
             default -> throw new IllegalArgumentException("Invalid Type");
         };
     }
@@ -100,12 +112,15 @@ public class Main {
         return System.nanoTime()-time;
     }
 
-    private static Matrix<Byte> getByteMatrix(double fullness, double cachePercent, int r, int c, int type, boolean onDisk){
+    static Matrix<Byte> getByteMatrix(double fullness, double cachePercent, int r, int c, int type, boolean onDisk){
+        return getByteMatrix(generateMatrix(r,c,fullness),cachePercent,type,onDisk);
+    }
+
+    static Matrix<Byte> getByteMatrix(Byte[][] matrix, double cachePercent, int type, boolean onDisk){
         if(type<1 || type>schemes.length){
             throw new IllegalArgumentException("Invalid Type");
         }
-        MemoryController controller = onDisk?new MemoryController(new File("matrices/matrix."+schemes[type-1].toLowerCase())):new MemoryController();
-        Byte[][] matrix = generateMatrix(r,c,fullness);
+        MemoryController controller = onDisk?new MemoryController(new File("matrices/matrix."+schemes[type-1].toLowerCase())):new MemoryController(type==1?QuadrantTreeMatrix.defaultStorage:StorageType.MEMORY);
         BiFunction<Byte, Integer, byte[]> encoder = (b,bpd)->new byte[]{b};
         BiFunction<byte[], Integer, Byte> decoder = (b,bpd)->b[0];
         MatrixEncoder<Byte> matrixEncoder = switch(type){
@@ -116,6 +131,9 @@ public class Main {
             case 5 -> new ZipEncoder<>(new DirectEncoder<>(
                     matrix,8,encoder,decoder
             ));
+            case 6 -> new BlockZipEncoder<>(new DirectEncoder<>(
+                    matrix,8,encoder,decoder
+            ));
             default -> null;
         };
         matrixEncoder.encodeMatrix(controller);
@@ -187,6 +205,63 @@ public class Main {
         }
     }
 
+    public static void concurrentReadTester(double cachePercent){
+        final int readsPerThread = 200000;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        StringBuilder data = new StringBuilder();
+        String header = "Elements Fullness Cache_Size Threads Reads Time Reads_Per_Second";
+        data.append(header);
+        data.append("\n");
+        System.out.println(header);
+        for(int dim = 256; dim <= 1024;dim *= 2){
+            BiFunction<Byte, Integer, byte[]> enc = (num, bitsPerData)->new byte[]{(byte)(num<<(8-bitsPerData))};
+            BiFunction<byte[], Integer, Byte> dec = (bytes, bitsPerData)->(byte)(bytes[0]>>>(8-bitsPerData));
+            MemoryController controller = new QuadrantTreeEncoder<>(generateMatrix(dim,dim,.3),8,enc,dec).encodeMatrix(new MemoryController());
+            QuadrantTreeMatrix<Byte> matrix = new QuadrantTreeMatrix<>(controller,enc,dec,cachePercent,true);
+            for(int threads = 1; threads<=maxThreads; threads = threads<maxThreads?Math.min(threads*2,maxThreads):threads+1){
+                Thread[] workers = new Thread[threads];
+                for(int t = 0; t<threads; t++){
+                    long seed = t;
+                    workers[t] = new Thread(()->{
+                        Random rand = new Random(seed);
+                        int height = matrix.height(), width = matrix.width();
+                        for(int i = 0; i<readsPerThread; i++){
+                            matrix.get(rand.nextInt(height),rand.nextInt(width));
+                        }
+                    });
+                }
+                long time = System.nanoTime();
+                for(Thread worker : workers){
+                    worker.start();
+                }
+                try{
+                    for(Thread worker : workers){
+                        worker.join();
+                    }
+                }catch(InterruptedException e){
+                    throw new RuntimeException("Interrupted while reading");
+                }
+                time = System.nanoTime()-time;
+                long reads = (long)readsPerThread*threads;
+                StringBuilder tempString = new StringBuilder();
+                tempString.append(dim*dim).append(" ").append(String.format("%.2f", .3)).append(" ").append(String.format("%.2f", cachePercent)).append(" ").append(threads).append(" ").append(reads).append(" ").append(String.format("%.0f",time/timeFactor)).append(" ").append(String.format("%.0f",reads/(time/Math.pow(10,9))));
+                System.out.println(tempString);
+                tempString.append("\n");
+                data.append(tempString);
+            }
+        }
+        try{
+            File output = new File("runTimeResults/QTE_Concurrent.txt");
+            output.getParentFile().mkdirs();
+            output.createNewFile();
+            PrintWriter pw = new PrintWriter(output);
+            pw.write(data.toString());
+            pw.flush();
+        }catch(Exception e){
+            throw new RuntimeException("Could not write to file");
+        }
+    }
+
     private static void sequentialRowTest(Matrix<Byte> matrix){
         Iterator<DataPoint<Byte>> iterator = matrix.iterator(IteratorType.BY_ROW);
         while(iterator.hasNext()){
@@ -0,0 +1,116 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class MappedByteArray implements ResizableByteArray{
+
+    private static final int segmentBits = 30;
+    private static final int segmentSize = 1<<segmentBits;
+    private static final int segmentMask = segmentSize-1;
+
+    private final FileChannel channel;
+    private final File source;
+    private final boolean readOnly;
+    private MappedByteBuffer[] segments;
+    private long size;
+
+    public MappedByteArray(long size, File source){
+        this.source = source;
+        try{
+            if(source.exists()){
+                source.delete();
+            }
+            source.getParentFile().mkdirs();
+            source.createNewFile();
+            channel = FileChannel.open(source.toPath(),StandardOpenOption.READ,StandardOpenOption.WRITE);
+        }catch(IOException e){
+            throw new RuntimeException("Could not open "+source);
+        }
+        readOnly = false;
+        segments = new MappedByteBuffer[0];
+        resize(size);
+    }
+
+    private MappedByteArray(File source, long offset, long size){
+        this.source = source;
+        readOnly = true;
+        try{
+            channel = FileChannel.open(source.toPath(),StandardOpenOption.READ);
+            if(offset+size>channel.size()){
+                throw new IllegalArgumentException("Invalid parameters");
+            }
+            segments = new MappedByteBuffer[(int)Main.roundUpDiv(size,segmentSize)];
+            for(int s = 0; s<segments.length; s++){
+                long start = (long)s<<segmentBits;
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,offset+start,(int)Math.min(segmentSize,size-start));
+            }
+            this.size = size;
+        }catch(IOException e){
+            throw new RuntimeException("Could not map "+source);
+        }
+    }
+
+    public static MappedByteArray readOnly(File source, long offset, long size){
+        return new MappedByteArray(source,offset,size);
+    }
+
+    public File source(){
+        return source;
+    }
+
+    public long size(){
+        return size;
+    }
+
+    public void resize(long newSize){
+        if(newSize<0){
+            throw new IllegalArgumentException("Size must be >=0");
+        }
+        if(readOnly){
+            if(newSize==size){
+                return;
+            }
+            throw new IllegalStateException("Mapping is read only");
+        }
+        try{
+            if(newSize<size){
+                flush();
+                segments = new MappedByteBuffer[0];
+                channel.truncate(newSize);
+            }
+            int count = (int)Main.roundUpDiv(newSize,segmentSize);
+            MappedByteBuffer[] newSegments = new MappedByteBuffer[count];
+            for(int s = 0; s<count; s++){
+                long start = (long)s<<segmentBits;
+                int length = (int)Math.min(segmentSize,newSize-start);
+                if(s<segments.length&&segments[s].capacity()==length){
+                    newSegments[s] = segments[s];
+                }else{
+                    newSegments[s] = channel.map(FileChannel.MapMode.READ_WRITE,start,length);
+                }
+            }
+            segments = newSegments;
+            size = newSize;
+        }catch(IOException e){
+            throw new RuntimeException("Could not map "+source);
+        }
+    }
+
+    public byte get(long i){
+        return segments[(int)(i>>>segmentBits)].get((int)i&segmentMask);
+    }
+
+    public void set(long i, byte value){
+        segments[(int)(i>>>segmentBits)].put((int)i&segmentMask,value);
+    }
+
+    public void flush(){
+        if(readOnly){
+            return;
+        }
+        for(MappedByteBuffer segment : segments){
+            segment.force();
+        }
+    }
+}
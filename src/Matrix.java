@@ -1,13 +1,24 @@
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongToDoubleFunction;
 
 public abstract class Matrix<E>{
 
-    public abstract int estimateBitSize();
+    public static final int productCutoff = 1<<14;
+
+    public abstract long estimateBitSize();
     public abstract void trim();
 
     public abstract E get(int r, int c);
     public abstract E set(int r, int c, E value);
 
+    public void setAll(Iterable<DataPoint<E>> updates){
+        for(DataPoint<E> update : updates){
+            set(update.row,update.column,update.data);
+        }
+    }
+
     public abstract int height();
     public abstract int width();
     public int size(){
@@ -16,6 +27,15 @@ public abstract class Matrix<E>{
 
     public abstract E[][] toRawMatrix();
 
+    public void visit(MatrixVisitor<E> visitor){
+        visitor.start(height(),width());
+        Iterator<DataPoint<E>> iterator = iterator(IteratorType.BY_ROW);
+        while(iterator.hasNext()){
+            DataPoint<E> point = iterator.next();
+            visitor.visit(point.row,point.column,point.data);
+        }
+    }
+
     public Iterator<DataPoint<E>> iterator(){
         return iterator(IteratorType.DEFAULT);
     }
@@ -26,14 +46,70 @@ public abstract class Matrix<E>{
 
     public abstract Iterator<DataPoint<E>> iterator(int r, int c, int h, int w, IteratorType type);
 
+    public void multiply(double[] x, double[] y, LongToDoubleFunction values){
+        multiply(x,y,values,false,null);
+    }
+
+    public void multiplyParallel(double[] x, double[] y, LongToDoubleFunction values){
+        multiply(x,y,values,false,ForkJoinPool.commonPool());
+    }
+
+    public void multiplyTransposed(double[] x, double[] y, LongToDoubleFunction values){
+        multiply(x,y,values,true,null);
+    }
+
+    public void multiplyTransposedParallel(double[] x, double[] y, LongToDoubleFunction values){
+        multiply(x,y,values,true,ForkJoinPool.commonPool());
+    }
+
+    public void multiply(float[] x, float[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool){
+        if(x==null||y==null){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        double[] in = new double[x.length], out = new double[y.length];
+        for(int i = 0; i<x.length; i++){
+            in[i] = x[i];
+        }
+        multiply(in,out,values,transpose,pool);
+        for(int i = 0; i<y.length; i++){
+            y[i] = (float)out[i];
+        }
+    }
+
+    public abstract void multiply(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool);
+
+    protected double startProduct(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, StandardHeader<E> header){
+        if(x==null||y==null||values==null||x.length!=(transpose?height():width())||y.length!=(transpose?width():height())){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        if(header.bitsPerData>64){
+            throw new IllegalStateException("Data is too wide to multiply");
+        }
+        double defaultValue = values.applyAsDouble(header.defaultBits), sum = 0;
+        if(defaultValue!=0){
+            for(double value : x){
+                sum+=value;
+            }
+        }
+        Arrays.fill(y,defaultValue*sum);
+        return defaultValue;
+    }
+
     public String toString(){
-        Object[][] mat;
+        StringBuilder builder = new StringBuilder();
         try{
-            mat = toRawMatrix();
+            Iterator<DataPoint<E>> iterator = iterator(IteratorType.BY_ROW);
+            while(iterator.hasNext()){
+                DataPoint<E> point = iterator.next();
+                builder.append(point.column==0?"[":", ").append(point.data);
+                if(point.column==width()-1){
+                    builder.append(point.row==height()-1?"]":"]\n");
+                }
+            }
         }catch(Exception e){
             return e.toString();
         }
-        return Main.matrixToString(mat);
+        return builder.toString();
     }
 
 
@@ -0,0 +1,228 @@
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Function;
+
+public class MatrixBenchmark {
+
+    private static final String[] workloads = {"SeqRow","RanRow","SeqCol","RanCol","Random","SubBlock","Sparse","SpMV","Set"};
+    private static volatile int sink;
+
+    private final List<Integer> types, dims;
+    private final List<Double> fullness, cachePercents;
+    private final List<Boolean> locations;
+    private final List<String> toRun;
+    private final int warmup, iterations, operations, blockSize;
+
+    public MatrixBenchmark(Map<String,String> options){
+        types = parse(options.getOrDefault("scheme","QTE,CRS,CCS,DEF,ZIP,BZIP"),(s)->{
+            int index = Arrays.asList(Main.schemes).indexOf(s.toUpperCase());
+            if(index==-1){
+                throw new IllegalArgumentException("Unknown scheme "+s);
+            }
+            return index+1;
+        });
+        dims = parse(options.getOrDefault("dim","256,512"),Integer::parseInt);
+        fullness = parse(options.getOrDefault("fullness",".1,.3"),Double::parseDouble);
+        cachePercents = parse(options.getOrDefault("cache",".1"),Double::parseDouble);
+        locations = parse(options.getOrDefault("location","memory"),(s)->{
+            if(!s.equalsIgnoreCase("memory")&&!s.equalsIgnoreCase("disk")){
+                throw new IllegalArgumentException("Unknown location "+s);
+            }
+            return s.equalsIgnoreCase("disk");
+        });
+        toRun = parse(options.getOrDefault("workload",String.join(",",workloads)),(s)->{
+            for(String workload : workloads){
+                if(workload.equalsIgnoreCase(s)){
+                    return workload;
+                }
+            }
+            throw new IllegalArgumentException("Unknown workload "+s);
+        });
+        warmup = Integer.parseInt(options.getOrDefault("warmup","2"));
+        iterations = Integer.parseInt(options.getOrDefault("iterations","5"));
+        operations = Integer.parseInt(options.getOrDefault("operations","20000"));
+        blockSize = Integer.parseInt(options.getOrDefault("block","32"));
+        if(warmup<0||iterations<=0||operations<=0||blockSize<=0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+    }
+
+    private static <T> List<T> parse(String values, Function<String,T> parser){
+        List<T> parsed = new ArrayList<>();
+        for(String value : values.split(",")){
+            if(!value.isBlank()){
+                parsed.add(parser.apply(value.trim()));
+            }
+        }
+        return parsed;
+    }
+
+    public static void main(String[] args){
+        Map<String,String> options = new HashMap<>();
+        for(String arg : args){
+            int split = arg.indexOf('=');
+            if(split==-1){
+                throw new IllegalArgumentException("Arguments must be key=value, got "+arg);
+            }
+            options.put(arg.substring(0,split).toLowerCase(),arg.substring(split+1));
+        }
+        String output = options.getOrDefault("output","runTimeResults/Benchmark.txt");
+        String results = new MatrixBenchmark(options).run();
+        try{
+            File file = new File(output);
+            if(file.getParentFile()!=null){
+                file.getParentFile().mkdirs();
+            }
+            PrintWriter pw = new PrintWriter(file);
+            pw.write(results);
+            pw.flush();
+            pw.close();
+        }catch(Exception e){
+            throw new RuntimeException("Could not write to file");
+        }
+    }
+
+    public String run(){
+        StringBuilder data = new StringBuilder();
+        String header = "Scheme Location Elements Fullness Cache_Size Workload Ops_Per_Second Error Bytes_Per_Op Bytes_Per_Nonzero";
+        System.out.println(header);
+        data.append(header).append("\n");
+        for(int type : types){
+            for(boolean onDisk : locations){
+                for(int dim : dims){
+                    for(double full : fullness){
+                        for(double cachePercent : type==1?cachePercents:Collections.singletonList(0.0)){
+                            for(String workload : toRun){
+                                String result = measure(type,onDisk,dim,full,cachePercent,workload);
+                                if(result==null){
+                                    continue;
+                                }
+                                String line = Main.schemes[type-1]+" "+(onDisk?"Disk":"Memory")+" "+(dim*dim)+" "+String.format("%.2f",full)+" "+String.format("%.2f",cachePercent)+" "+workload+" "+result;
+                                System.out.println(line);
+                                data.append(line).append("\n");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return data.toString();
+    }
+
+    private String measure(int type, boolean onDisk, int dim, double full, double cachePercent, String workload){
+        Matrix<Byte> matrix = Main.getByteMatrix(full,cachePercent,dim,dim,type,onDisk);
+        if(workload.equals("Set")&&matrix.set(0,0,matrix.get(0,0))==null){
+            return null; // Read only scheme
+        }
+        Random rand = new Random(dim*31L+type);
+        long nonDefault = consume(matrix.iterator(IteratorType.NON_DEFAULT));
+        for(int i = 0; i<warmup; i++){
+            runWorkload(matrix,workload,full,nonDefault,rand);
+        }
+        double[] rates = new double[iterations];
+        long totalOps = 0, totalBytes = allocatedBytes()<0?-1:0;
+        for(int i = 0; i<iterations; i++){
+            long bytes = allocatedBytes();
+            long time = System.nanoTime();
+            long ops = runWorkload(matrix,workload,full,nonDefault,rand);
+            time = System.nanoTime()-time;
+            if(totalBytes>=0){
+                totalBytes+=allocatedBytes()-bytes;
+            }
+            totalOps+=ops;
+            rates[i] = ops/(Math.max(1,time)/Math.pow(10,9));
+        }
+        double mean = 0;
+        for(double rate : rates){
+            mean+=rate;
+        }
+        mean/=iterations;
+        double deviation = 0;
+        for(double rate : rates){
+            deviation+=(rate-mean)*(rate-mean);
+        }
+        deviation = iterations>1?Math.sqrt(deviation/(iterations-1)):0;
+        return String.format("%.0f",mean)+" "+String.format("%.0f",deviation)+" "+(totalBytes<0?"NA":String.format("%.1f",(double)totalBytes/Math.max(1,totalOps)))+" "+String.format("%.2f",matrix.estimateBitSize()/8.0/Math.max(1,nonDefault));
+    }
+
+    private static long allocatedBytes(){
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean){
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private long runWorkload(Matrix<Byte> matrix, String workload, double full, long nonDefault, Random rand){
+        int height = matrix.height(), width = matrix.width();
+        return switch(workload){
+            case "SeqRow" -> consume(matrix.iterator(IteratorType.BY_ROW));
+            case "SeqCol" -> consume(matrix.iterator(IteratorType.BY_COL));
+            case "RanRow" -> {
+                long ops = 0;
+                for(int i = 0; i<height; i++){
+                    ops+=consume(matrix.iterator(rand.nextInt(height),0,1,width,IteratorType.BY_ROW));
+                }
+                yield ops;
+            }
+            case "RanCol" -> {
+                long ops = 0;
+                for(int i = 0; i<width; i++){
+                    ops+=consume(matrix.iterator(0,rand.nextInt(width),height,1,IteratorType.BY_COL));
+                }
+                yield ops;
+            }
+            case "Random" -> {
+                int hash = 0;
+                for(int i = 0; i<operations; i++){
+                    hash+=matrix.get(rand.nextInt(height),rand.nextInt(width));
+                }
+                sink+=hash;
+                yield operations;
+            }
+            case "SubBlock" -> {
+                int h = Math.min(blockSize,height), w = Math.min(blockSize,width);
+                long ops = 0;
+                while(ops<operations){
+                    ops+=consume(matrix.iterator(rand.nextInt(height-h+1),rand.nextInt(width-w+1),h,w,IteratorType.DEFAULT));
+                }
+                yield ops;
+            }
+            case "Sparse" -> {
+                consume(matrix.iterator(IteratorType.NON_DEFAULT));
+                yield (long)height*width;
+            }
+            case "SpMV" -> {
+                double[] x = new double[width], y = new double[height];
+                for(int i = 0; i<width; i++){
+                    x[i] = rand.nextDouble();
+                }
+                matrix.multiplyParallel(x,y,(bits)->(byte)bits);
+                sink+=(int)y[rand.nextInt(height)];
+                yield 2*nonDefault;
+            }
+            case "Set" -> {
+                for(int i = 0; i<operations; i++){
+                    byte value = rand.nextDouble()<full?(byte)(rand.nextInt(127)+1):0;
+                    matrix.set(rand.nextInt(height),rand.nextInt(width),value);
+                }
+                yield operations;
+            }
+            default -> throw new IllegalArgumentException("Unknown workload "+workload);
+        };
+    }
+
+    private static long consume(Iterator<DataPoint<Byte>> iterator){
+        long ops = 0;
+        int hash = 0;
+        while(iterator.hasNext()){
+            DataPoint<Byte> point = iterator.next();
+            hash+=point.data+point.row+point.column;
+            ops++;
+        }
+        sink+=hash;
+        return ops;
+    }
+}
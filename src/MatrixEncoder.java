@@ -2,9 +2,9 @@ import java.util.function.BiFunction;
 
 public interface MatrixEncoder<E>{
 
-    int refSize();
+    long refSize();
 
-    int dataSize();
+    long dataSize();
 
     int headerSize();
 
@@ -26,6 +26,8 @@ public interface MatrixEncoder<E>{
 
     E[][] decodeMatrix(MemoryController controller);
 
+    void decode(MemoryController controller, MatrixVisitor<E> visitor);
+
     static <V> V[][] decodeMatrix(MemoryController controller, BiFunction<byte[],Integer,V> decoder){
         throw new RuntimeException("Not implemented");
     }
@@ -0,0 +1,29 @@
+public interface MatrixVisitor<V>{
+
+    void visit(int r, int c, V value);
+
+    default void start(int height, int width){}
+
+    default void visitDefault(int r, int c, int h, int w, V defaultItem){
+        for(int row = r; row<r+h; row++){
+            for(int col = c; col<c+w; col++){
+                visit(row,col,defaultItem);
+            }
+        }
+    }
+
+    class DenseCollector<V> implements MatrixVisitor<V>{
+
+        public V[][] matrix;
+
+        public void start(int height, int width){
+            @SuppressWarnings("unchecked")
+            V[][] created = (V[][])new Object[height][width];
+            matrix = created;
+        }
+
+        public void visit(int r, int c, V value){
+            matrix[r][c] = value;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+public class MemoryBitArray implements BitArray{
+
+    private static final int segmentBits = 24, segmentWords = 1<<segmentBits, segmentMask = segmentWords-1;
+    private final long[][] segments;
+    private final long length;
+
+    public MemoryBitArray(long length){
+        if(length<0){
+            throw new IllegalArgumentException("Length must be >=0");
+        }
+        this.length = length;
+        long words = Main.roundUpDiv(length,64);
+        segments = new long[(int)Main.roundUpDiv(words,segmentWords)][];
+        for(int s = 0; s<segments.length; s++){
+            segments[s] = new long[(int)Math.min(segmentWords,words-((long)s<<segmentBits))];
+        }
+    }
+
+    public long size(){
+        return length;
+    }
+
+    private long word(long word){
+        return segments[(int)(word>>>segmentBits)][(int)word&segmentMask];
+    }
+
+    private void setWord(long word, long value){
+        segments[(int)(word>>>segmentBits)][(int)word&segmentMask] = value;
+    }
+
+    public boolean get(long index){
+        return (word(index>>>6)<<index)<0;
+    }
+
+    public void set(long index, boolean bit){
+        long word = index>>>6, mask = Long.MIN_VALUE>>>index;
+        setWord(word,bit?word(word)|mask:word(word)&~mask);
+    }
+
+    public long getLong(long index, int length){
+        if(length==0){
+            return 0;
+        }
+        long word = index>>>6;
+        int offset = (int)index&63;
+        long first = word(word)<<offset;
+        if(offset+length<=64){
+            return first>>>(64-length);
+        }
+        int remaining = offset+length-64;
+        return (first>>>(64-length))|(word(word+1)>>>(64-remaining));
+    }
+
+    public void setLong(long index, int length, long value){
+        if(length==0){
+            return;
+        }
+        long word = index>>>6;
+        int offset = (int)index&63;
+        if(offset+length<=64){
+            int shift = 64-offset-length;
+            long mask = (-1L>>>(64-length))<<shift;
+            setWord(word,(word(word)&~mask)|((value<<shift)&mask));
+        }else{
+            int remaining = offset+length-64;
+            long firstMask = -1L>>>offset;
+            setWord(word,(word(word)&~firstMask)|((value>>>remaining)&firstMask));
+            setWord(word+1,(word(word+1)&(-1L>>>remaining))|(value<<(64-remaining)));
+        }
+    }
+}
@@ -6,15 +6,15 @@ public class MemoryByteArray implements ByteArray{
         array = new byte[size];
     }
 
-    public int size(){
+    public long size(){
         return array.length;
     }
 
-    public byte get(int i){
-        return array[i];
+    public byte get(long i){
+        return array[(int)i];
     }
 
-    public void set(int i, byte b){
-        array[i] = b;
+    public void set(long i, byte b){
+        array[(int)i] = b;
     }
 }
@@ -4,102 +4,225 @@ import java.util.function.BiFunction;
 
 public class MemoryController{
 
-    private BitList<Boolean> bits;
+    private BitArray bits;
     public final boolean onDisk;
     public final File source;
-    private int size;
-    private final BiFunction<Boolean,Integer,byte[]> bitEncoder = (bool,len)->new byte[]{(byte)(bool?-128:0)};
-    private final BiFunction<byte[],Integer,Boolean> bitDecoder = (bits,len)->bits[0]!=0;
-
-    private BitList<Boolean> makeList(int newSize){
+    public final StorageType storageType;
+    private final int pageSize, pageCount;
+    private ResizableByteArray resizable;
+    private BlockBitArray blocks;
+    private long size;
+
+    private BitArray makeBits(long newCapacity){
+        if(storageType==StorageType.CHUNKED){
+            blocks = new BlockBitArray();
+            return blocks;
+        }
         if(!onDisk){
-            return new BitList<>(newSize, 1,
-                    bitEncoder,
-                    bitDecoder
-            );
+            return new MemoryBitArray(newCapacity);
+        }
+        long bytes = Main.roundUpDiv(newCapacity,8);
+        if(storageType==StorageType.RANDOM_ACCESS){
+            return new ByteBitArray(new DiskByteArray(bytes,source));
+        }
+        if(resizable==null){
+            resizable = switch(storageType){
+                case MAPPED -> new MappedByteArray(bytes,source);
+                default -> new PagedByteArray(bytes,source,pageSize,pageCount,PagedByteArray.defaultWriteBatch);
+            };
+        }else{
+            resizable.resize(0);
+            resizable.resize(bytes);
         }
-        return new BitList<>(newSize, 1,
-                bitEncoder,
-                bitDecoder,
-                source
-        );
+        return new ByteBitArray(resizable);
     }
 
-    private void resize(int newSize, int newCapacity){
+    private void resize(long newSize, long newCapacity){
         if(newSize>newCapacity){
             throw new IllegalArgumentException("Invalid Parameters");
         }
-        BitList<Boolean> newList = new BitList<>(newCapacity,1,
-                bitEncoder,
-                bitDecoder
-        );
-        int toCopy = Math.min(size(),newSize);
-        newList.setMany(0,toCopy,bits.getMany(0,toCopy));
+        if(blocks!=null){
+            if(newSize<size){
+                blocks.remove(newSize,size);
+            }else{
+                blocks.insert(size,newSize-size);
+            }
+            size = newSize;
+            return;
+        }
+        if(resizable!=null){
+            resizable.resize(Main.roundUpDiv(newCapacity,8));
+            size = newSize;
+            return;
+        }
+        BitArray newBits = new MemoryBitArray(newCapacity);
+        long toCopy = Math.min(size(),newSize);
+        bits.copyTo(newBits,toCopy);
         if(!onDisk){
-            bits = newList;
+            bits = newBits;
         }else{
-            bits = makeList(newCapacity);
-            bits.setMany(0,toCopy,newList.getMany(0,toCopy));
+            bits = makeBits(newCapacity);
+            newBits.copyTo(bits,toCopy);
         }
         size = newSize;
     }
 
     public MemoryController(){
+        this(StorageType.MEMORY);
+    }
+
+    public MemoryController(StorageType storageType){
+        if(storageType!=StorageType.MEMORY&&storageType!=StorageType.CHUNKED){
+            throw new IllegalArgumentException("Disk storage types need a source file");
+        }
         onDisk = false;
         source = null;
+        this.storageType = storageType;
+        pageSize = 0;
+        pageCount = 0;
         size = 0;
-        bits = makeList(8);
+        bits = makeBits(8);
     }
 
     public MemoryController(File source){
+        this(source,StorageType.RANDOM_ACCESS);
+    }
+
+    public MemoryController(File source, StorageType storageType){
+        this(source,storageType,PagedByteArray.defaultPageSize,PagedByteArray.defaultPageCount);
+    }
+
+    public MemoryController(File source, int pageSize, int pageCount){
+        this(source,StorageType.PAGED,pageSize,pageCount);
+    }
+
+    private MemoryController(File source, StorageType storageType, int pageSize, int pageCount){
+        if(storageType==null||storageType==StorageType.MEMORY||storageType==StorageType.CHUNKED){
+            throw new IllegalArgumentException("Invalid storage type for a source file");
+        }
         onDisk = true;
         this.source = source;
+        this.storageType = storageType;
+        this.pageSize = pageSize;
+        this.pageCount = pageCount;
         size = 0;
-        bits = makeList(8);
+        bits = makeBits(8);
+    }
+
+    private MemoryController(File source, MappedByteArray mapped, long size){
+        onDisk = true;
+        this.source = source;
+        storageType = StorageType.MAPPED;
+        pageSize = 0;
+        pageCount = 0;
+        resizable = mapped;
+        bits = new ByteBitArray(mapped);
+        this.size = size;
     }
 
-    private void ensureCapacity(int toAdd){
+    private MemoryController(ResizableByteArray bytes, long size){
+        onDisk = false;
+        source = null;
+        storageType = StorageType.MEMORY;
+        pageSize = 0;
+        pageCount = 0;
+        resizable = bytes;
+        bits = new ByteBitArray(bytes);
+        this.size = size;
+    }
+
+    public static MemoryController mapReadOnly(File source, long offset, long size){
+        return new MemoryController(source,MappedByteArray.readOnly(source,offset,Main.roundUpDiv(size,8)),size);
+    }
+
+    public static MemoryController readOnly(ResizableByteArray bytes, long size){
+        if(bytes==null||size<0||Main.roundUpDiv(size,8)>bytes.size()){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        return new MemoryController(bytes,size);
+    }
+
+    public PagedByteArray pages(){
+        return resizable instanceof PagedByteArray?(PagedByteArray)resizable:null;
+    }
+
+    private void ensureCapacity(long toAdd){
         if(toAdd<=0){
             return;
         }
-        if(size() + toAdd <= bits.length){
+        if(blocks!=null){
+            blocks.insert(size,toAdd);
+            size+=toAdd;
+            return;
+        }
+        if(size() + toAdd <= bits.size()){
             size+=toAdd;
             return;
         }
-        int toMult = (int)Math.ceil(Main.logBase(size()+toAdd,2) - Main.logBase(bits.length,2));
-        toMult = 1<<toMult;
-        resize(size()+toAdd,bits.length*toMult);
+        int toMult = (int)Math.ceil(Main.logBase(size()+toAdd,2) - Main.logBase(bits.size(),2));
+        resize(size()+toAdd,bits.size()<<toMult);
     }
 
     public void clear(){
         size = 0;
-        bits = makeList(8);
+        bits = makeBits(8);
     }
 
-    public void delete(int start, int end){
+    public void delete(long start, long end){
         if(start>end||start<0||end>size()){
             throw new IllegalArgumentException();
         }
-        setBits(start,size()-end,getBits(end,size()-end));
+        if(blocks!=null){
+            blocks.remove(start,end);
+        }else{
+            bits.copy(end,start,size()-end);
+        }
         size-=(end-start);
     }
 
-    public int size(){
+    public void insert(long index, long length){
+        if(index<0||index>size()||length<0){
+            throw new IllegalArgumentException();
+        }
+        if(blocks!=null){
+            blocks.insert(index,length);
+            size+=length;
+            return;
+        }
+        long toMove = size()-index;
+        ensureCapacity(length);
+        bits.copy(index,index+length,toMove);
+        for(long i = 0; i<length; i+=64){
+            bits.setLong(index+i,(int)Math.min(64,length-i),0);
+        }
+    }
+
+    public long size(){
         return size;
     }
 
-    public int sizeWithCapacity(){
-        return bits.length;
+    public long sizeWithCapacity(){
+        return bits.size();
     }
 
-    public Boolean getBit(int index){
+    public boolean getBit(long index){
         if(index>=size()){
             throw new ArrayIndexOutOfBoundsException("Index "+index+" is greater than length "+size());
         }
         return bits.get(index);
     }
 
-    public byte[] getBits(int index, int length){
+    public long getBitsAsLong(long index, int length){
+        if(index+length>size()){
+            throw new ArrayIndexOutOfBoundsException("Index "+(index+length)+" is greater than length "+size());
+        }
+        if(length<0||length>64){
+            throw new IllegalArgumentException();
+        }
+        return bits.getLong(index,length);
+    }
+
+    public byte[] getBits(long index, int length){
         if(index+length>size()){
             throw new ArrayIndexOutOfBoundsException("Index "+(index+length)+" is greater than length "+size());
         }
@@ -112,16 +235,16 @@ public class MemoryController{
         return bits.getMany(index,length);
     }
 
-    public <E> E getBits(int index, int length, BiFunction<byte[],Integer,E> decoder){
+    public <E> E getBits(long index, int length, BiFunction<byte[],Integer,E> decoder){
         return decoder.apply(getBits(index,length),length);
     }
 
-    public void setBit(int index, boolean bit){
+    public void setBit(long index, boolean bit){
         ensureCapacity(Math.max(0,index+1-size()));
         bits.set(index,bit);
     }
 
-    public void setBits(int index, int length, byte[] data){
+    public void setBits(long index, int length, byte[] data){
         if(length<0){
             throw new IllegalArgumentException();
         }
@@ -132,7 +255,18 @@ public class MemoryController{
         bits.setMany(index,length,data);
     }
 
-    public <E> void setBits(int index, int length, E data, BiFunction<E, Integer, byte[]> encoder){
+    public void setBitsAsLong(long index, int length, long data){
+        if(length<0||length>64){
+            throw new IllegalArgumentException();
+        }
+        if(length==0){
+            return;
+        }
+        ensureCapacity(Math.max(0,length+index-size()));
+        bits.setLong(index,length,data);
+    }
+
+    public <E> void setBits(long index, int length, E data, BiFunction<E, Integer, byte[]> encoder){
         setBits(index,length,encoder.apply(data,length));
     }
 
@@ -160,6 +294,11 @@ public class MemoryController{
             controller.setBits(controller.size(),length,bits);
         }
 
+        public void writeBitsAsLong(int length, long bits){
+            checkOpen();
+            controller.setBitsAsLong(controller.size(),length,bits);
+        }
+
         public void writeBit(boolean bit){
             checkOpen();
             controller.setBit(controller.size(),bit);
@@ -178,7 +317,7 @@ public class MemoryController{
 
     public static class MemoryBitInputStream extends BitInputStream {
 
-        private int readIndex;
+        private long readIndex;
         private final MemoryController controller;
         private boolean closed = false;
 
@@ -196,7 +335,7 @@ public class MemoryController{
             return !closed&&readIndex<controller.size();
         }
 
-        public int totalRead(){
+        public long totalRead(){
             return readIndex;
         }
 
@@ -220,6 +359,13 @@ public class MemoryController{
             return data;
         }
 
+        public long readBitsAsLong(int num){
+            checkOpen();
+            long data = controller.getBitsAsLong(readIndex,num);
+            readIndex+=num;
+            return data;
+        }
+
         public <E> E readBits(int num, BiFunction<byte[], Integer, E> decoder){
             return decoder.apply(readBits(num),num);
         }
@@ -233,10 +379,14 @@ public class MemoryController{
         resize(size(),size());
     }
 
-    public String bitToString(int start){
+    public void flush(){
+        bits.flush();
+    }
+
+    public String bitToString(long start){
         StringBuilder builder = new StringBuilder();
         if(size>0){
-            for(int i = start; i<size;i++){
+            for(long i = start; i<size;i++){
                 builder.append(getBit(i)?"1":"0");
             }
         }
@@ -248,6 +398,15 @@ public class MemoryController{
     }
 
     public String toStringWithCapacity(){
-        return bits.toString();
+        StringBuilder builder = new StringBuilder("[");
+        for(long i = 0; i<bits.size();i++){
+            builder.append(bits.get(i));
+            builder.append(", ");
+        }
+        if(bits.size()>0){
+            builder.delete(builder.length()-2,builder.length());
+        }
+        builder.append("]");
+        return builder.toString();
     }
 }
@@ -0,0 +1,220 @@
+import java.io.*;
+import java.util.Arrays;
+
+public class PagedByteArray implements ResizableByteArray{
+
+    public static final int defaultPageSize = 4096;
+    public static final int defaultPageCount = 256;
+    public static final int defaultWriteBatch = 32;
+
+    private final RandomAccessFile file;
+    private final File source;
+    private final int pageSize, pageBits, pageMask, writeBatch;
+    private final byte[][] frames;
+    private final int[] framePage;
+    private final boolean[] dirty, referenced;
+    private int[] pageFrame;
+    private long size;
+    private int clockHand, lastPage = -1, lastFrame = -1;
+    private long hits, misses, evictions, pagesWritten;
+
+    public PagedByteArray(long size, File source){
+        this(size,source,defaultPageSize,defaultPageCount,defaultWriteBatch);
+    }
+
+    public PagedByteArray(long size, File source, int pageSize, int pageCount, int writeBatch){
+        if(pageSize<=0||Integer.bitCount(pageSize)!=1){
+            throw new IllegalArgumentException("Page size must be a power of 2");
+        }
+        if(pageCount<=0||writeBatch<=0){
+            throw new IllegalArgumentException("Page count and write batch must be >0");
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.writeBatch = writeBatch;
+        pageBits = Integer.numberOfTrailingZeros(pageSize);
+        pageMask = pageSize-1;
+        frames = new byte[pageCount][pageSize];
+        framePage = new int[pageCount];
+        Arrays.fill(framePage,-1);
+        dirty = new boolean[pageCount];
+        referenced = new boolean[pageCount];
+        pageFrame = new int[0];
+        try{
+            if(source.exists()){
+                source.delete();
+            }
+            source.getParentFile().mkdirs();
+            source.createNewFile();
+            file = new RandomAccessFile(source,"rw");
+        }catch(IOException e){
+            throw new RuntimeException("Could not open "+source);
+        }
+        resize(size);
+    }
+
+    public File source(){
+        return source;
+    }
+
+    public long size(){
+        return size;
+    }
+
+    public long hits(){
+        return hits;
+    }
+
+    public long misses(){
+        return misses;
+    }
+
+    public long evictions(){
+        return evictions;
+    }
+
+    public long pagesWritten(){
+        return pagesWritten;
+    }
+
+    public void resetStatistics(){
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        pagesWritten = 0;
+    }
+
+    public void resize(long newSize){
+        if(newSize<0){
+            throw new IllegalArgumentException("Size must be >=0");
+        }
+        int pages = Math.toIntExact(Main.roundUpDiv(newSize,pageSize));
+        if(newSize<size){
+            for(int f = 0; f<frames.length; f++){
+                int page = framePage[f];
+                if(page>=pages){
+                    framePage[f] = -1;
+                    dirty[f] = false;
+                    referenced[f] = false;
+                }else if(page==pages-1&&((int)newSize&pageMask)!=0){
+                    Arrays.fill(frames[f],(int)newSize&pageMask,pageSize,(byte)0);
+                }
+            }
+            lastPage = -1;
+            lastFrame = -1;
+        }
+        int[] newPageFrame = Arrays.copyOf(pageFrame,pages);
+        for(int p = pageFrame.length; p<pages; p++){
+            newPageFrame[p] = -1;
+        }
+        pageFrame = newPageFrame;
+        try{
+            writeBack(0,frames.length);
+            file.setLength(newSize);
+        }catch(IOException e){
+            throw new RuntimeException("Could not resize "+source);
+        }
+        size = newSize;
+    }
+
+    public byte get(long i){
+        return frames[frameFor((int)(i>>>pageBits))][(int)i&pageMask];
+    }
+
+    public void set(long i, byte value){
+        int frame = frameFor((int)(i>>>pageBits));
+        frames[frame][(int)i&pageMask] = value;
+        dirty[frame] = true;
+    }
+
+    public void flush(){
+        try{
+            writeBack(0,frames.length);
+            file.getFD().sync();
+        }catch(IOException e){
+            throw new RuntimeException("Flush failed");
+        }
+    }
+
+    private int frameFor(int page){
+        if(page==lastPage){
+            hits++;
+            return lastFrame;
+        }
+        int frame = pageFrame[page];
+        if(frame==-1){
+            misses++;
+            frame = load(page);
+        }else{
+            hits++;
+        }
+        referenced[frame] = true;
+        lastPage = page;
+        lastFrame = frame;
+        return frame;
+    }
+
+    private int load(int page){
+        int frame = victim();
+        try{
+            if(framePage[frame]!=-1){
+                evictions++;
+                if(dirty[frame]){
+                    writeBack(framePage[frame],writeBatch);
+                }
+                pageFrame[framePage[frame]] = -1;
+            }
+            byte[] data = frames[frame];
+            long start = (long)page<<pageBits;
+            int read = 0;
+            file.seek(start);
+            while(read<pageSize){
+                int count = file.read(data,read,pageSize-read);
+                if(count<0){
+                    break;
+                }
+                read+=count;
+            }
+            Arrays.fill(data,read,pageSize,(byte)0);
+        }catch(IOException e){
+            throw new RuntimeException("Read failed");
+        }
+        framePage[frame] = page;
+        pageFrame[page] = frame;
+        dirty[frame] = false;
+        return frame;
+    }
+
+    private int victim(){
+        while(true){
+            int frame = clockHand;
+            clockHand = (clockHand+1)%frames.length;
+            if(framePage[frame]==-1||!referenced[frame]){
+                return frame;
+            }
+            referenced[frame] = false;
+        }
+    }
+
+    private void writeBack(int fromPage, int limit) throws IOException{
+        long[] toWrite = new long[frames.length];
+        int count = 0;
+        for(int f = 0; f<frames.length; f++){
+            if(dirty[f]&&framePage[f]>=fromPage){
+                toWrite[count++] = ((long)framePage[f]<<32)|f;
+            }
+        }
+        Arrays.sort(toWrite,0,count);
+        for(int i = 0; i<Math.min(count,limit); i++){
+            int frame = (int)toWrite[i];
+            long start = toWrite[i]>>>32<<pageBits;
+            int length = (int)Math.min(pageSize,size-start);
+            if(length>0){
+                file.seek(start);
+                file.write(frames[frame],0,length);
+            }
+            dirty[frame] = false;
+            pagesWritten++;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+public class PrimitiveQuadrantTreeEncoder{
+
+    public interface CellSource{
+        long get(int r, int c);
+    }
+
+    private final CellSource source;
+    private final int height, width, bitsPerData;
+    private long defaultBits;
+    private MemoryController.MemoryBitOutputStream writer;
+    private SummedAreaTable nonDefault;
+    private int headerSize;
+    private long refSize, dataSize;
+
+    public PrimitiveQuadrantTreeEncoder(int height, int width, int bitsPerData, CellSource source){
+        if(bitsPerData<=0||bitsPerData>64){
+            throw new IllegalArgumentException("BitsPerData must be >0 and <=64");
+        }
+        this.height = height;
+        this.width = width;
+        this.bitsPerData = bitsPerData;
+        this.source = source;
+    }
+
+    public static PrimitiveQuadrantTreeEncoder of(byte[][] m, int bitsPerData){
+        return new PrimitiveQuadrantTreeEncoder(m.length,m.length==0?0:m[0].length,bitsPerData,(r,c)->m[r][c]);
+    }
+
+    public static PrimitiveQuadrantTreeEncoder of(short[][] m, int bitsPerData){
+        return new PrimitiveQuadrantTreeEncoder(m.length,m.length==0?0:m[0].length,bitsPerData,(r,c)->m[r][c]);
+    }
+
+    public static PrimitiveQuadrantTreeEncoder of(int[][] m, int bitsPerData){
+        return new PrimitiveQuadrantTreeEncoder(m.length,m.length==0?0:m[0].length,bitsPerData,(r,c)->m[r][c]);
+    }
+
+    public static PrimitiveQuadrantTreeEncoder of(long[][] m, int bitsPerData){
+        return new PrimitiveQuadrantTreeEncoder(m.length,m.length==0?0:m[0].length,bitsPerData,(r,c)->m[r][c]);
+    }
+
+    public static PrimitiveQuadrantTreeEncoder of(float[][] m){
+        return new PrimitiveQuadrantTreeEncoder(m.length,m.length==0?0:m[0].length,32,(r,c)->Float.floatToRawIntBits(m[r][c]));
+    }
+
+    public static PrimitiveQuadrantTreeEncoder of(double[][] m){
+        return new PrimitiveQuadrantTreeEncoder(m.length,m.length==0?0:m[0].length,64,(r,c)->Double.doubleToRawLongBits(m[r][c]));
+    }
+
+    public String getName(){
+        return "QTE";
+    }
+
+    public long refSize(){
+        return refSize;
+    }
+
+    public long dataSize(){
+        return dataSize;
+    }
+
+    public int headerSize(){
+        return headerSize;
+    }
+
+    private long mask(long bits){
+        return bitsPerData==64?bits:bits&((1L<<bitsPerData)-1);
+    }
+
+    public MemoryController encodeMatrix(MemoryController controller){
+        controller.clear();
+        writer = controller.outputStream();
+        LongCounter counts = new LongCounter();
+        int maxCount = 0;
+        defaultBits = 0;
+        for(int r = 0; r<height;r++){
+            for(int c = 0; c<width;c++){
+                long item = mask(source.get(r,c));
+                int count = counts.increment(item);
+                if(count>maxCount){
+                    maxCount = count;
+                    defaultBits = item;
+                }
+            }
+        }
+        dataSize = ((long)height*width-maxCount)*bitsPerData;
+        writer.writeBitsAsLong(8,bitsPerData);
+        writer.writeBitsAsLong(bitsPerData,defaultBits);
+        int heightBits = Main.logBaseCeil(height+1,2);
+        int widthBits = Main.logBaseCeil(width+1,2);
+        writer.writeBitsAsLong(5,heightBits-1);
+        writer.writeBitsAsLong(heightBits,height);
+        writer.writeBitsAsLong(5,widthBits-1);
+        writer.writeBitsAsLong(widthBits,width);
+        headerSize = 8+bitsPerData+5+heightBits+5+widthBits;
+        if((width>1||height>1)&&dataSize>0){
+            nonDefault = new SummedAreaTable(height,width,(r,c)->mask(source.get(r,c))!=defaultBits);
+            emit(0,0,height,width);
+            nonDefault = null;
+        }else{
+            writer.writeBit(false);
+        }
+        refSize = controller.size()-dataSize-headerSize;
+        controller.trim();
+        return controller;
+    }
+
+    private void emit(int yPos, int xPos, int height, int width){
+        if(nonDefault.count(yPos,xPos,height,width)==0){
+            writer.writeBit(false);
+            return;
+        }
+        writer.writeBit(true);
+        if(height==1&&width==1){
+            writer.writeBitsAsLong(bitsPerData,mask(source.get(yPos,xPos)));
+            return;
+        }
+        int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+        emit(yPos,xPos,nHeight,nWidth);
+        if(width>nWidth){
+            emit(yPos,xPos+nWidth,nHeight,width-nWidth);
+        }
+        if(height>nHeight){
+            emit(yPos+nHeight,xPos,height-nHeight,nWidth);
+            if(width>nWidth){
+                emit(yPos+nHeight,xPos+nWidth,height-nHeight,width-nWidth);
+            }
+        }
+    }
+
+    private static class LongCounter{
+
+        private long[] keys;
+        private int[] counts;
+        private boolean[] used;
+        private int size;
+
+        private LongCounter(){
+            keys = new long[16];
+            counts = new int[16];
+            used = new boolean[16];
+        }
+
+        private int slot(long key, long[] keys, boolean[] used){
+            int mask = keys.length-1;
+            int slot = Long.hashCode(key*0x9E3779B97F4A7C15L)&mask;
+            while(used[slot]&&keys[slot]!=key){
+                slot = (slot+1)&mask;
+            }
+            return slot;
+        }
+
+        private int increment(long key){
+            int slot = slot(key,keys,used);
+            if(!used[slot]){
+                if((size+1)*2>keys.length){
+                    grow();
+                    slot = slot(key,keys,used);
+                }
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            return ++counts[slot];
+        }
+
+        private void grow(){
+            long[] newKeys = new long[keys.length*2];
+            int[] newCounts = new int[keys.length*2];
+            boolean[] newUsed = new boolean[keys.length*2];
+            for(int i = 0; i<keys.length; i++){
+                if(used[i]){
+                    int slot = slot(keys[i],newKeys,newUsed);
+                    newUsed[slot] = true;
+                    newKeys[slot] = keys[i];
+                    newCounts[slot] = counts[i];
+                }
+            }
+            keys = newKeys;
+            counts = newCounts;
+            used = newUsed;
+        }
+    }
+}
@@ -25,8 +25,62 @@ public class Quadrant {
         newX = xPos+nWidth;
     }
 
-    public int size(){
-        return height*width;
+    public static long zOrderKey(int height, int width, int r, int c){
+        int depth = 0;
+        for(int h = height, w = width; h>1||w>1; h = h-h/2, w = w-w/2){
+            depth++;
+        }
+        long key = 0;
+        int yPos = 0, xPos = 0;
+        for(int level = depth-1; level>=0; level--){
+            int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+            int quadrant = 0;
+            if(r>=yPos+nHeight&&height>1){
+                quadrant+=2;
+                yPos+=nHeight;
+                height-=nHeight;
+            }else{
+                height = nHeight;
+            }
+            if(c>=xPos+nWidth&&width>1){
+                quadrant+=1;
+                xPos+=nWidth;
+                width-=nWidth;
+            }else{
+                width = nWidth;
+            }
+            key|=(long)quadrant<<(2*level);
+        }
+        return key;
+    }
+
+    public static long zOrderCell(int height, int width, long key){
+        int depth = 0;
+        for(int h = height, w = width; h>1||w>1; h = h-h/2, w = w-w/2){
+            depth++;
+        }
+        int yPos = 0, xPos = 0;
+        for(int level = depth-1; level>=0; level--){
+            int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+            int quadrant = (int)(key>>>(2*level))&3;
+            if((quadrant&2)!=0){
+                yPos+=nHeight;
+                height-=nHeight;
+            }else{
+                height = nHeight;
+            }
+            if((quadrant&1)!=0){
+                xPos+=nWidth;
+                width-=nWidth;
+            }else{
+                width = nWidth;
+            }
+        }
+        return (long)yPos<<32|xPos;
+    }
+
+    public long size(){
+        return (long)height*width;
     }
 
     public boolean contains(int r, int c){
@@ -135,6 +189,10 @@ public class Quadrant {
         return other.xPos >= xPos && other.yPos >= yPos && otherYEnd <= thisYEnd && otherXEnd <= thisXEnd;
     }
 
+    public boolean intersects(int y, int x, int h, int w){
+        return y<yPos+height&&y+h>yPos&&x<xPos+width&&x+w>xPos;
+    }
+
     public Quadrant getChildContaining(int r, int c){
         return getQuadrantFrame(getQuadrant(r,c));
     }
@@ -0,0 +1,204 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class QuadrantIndex {
+
+    public static final int defaultThreshold = 2048;
+    private final MemoryController encodedMatrix;
+    private final int headerSize, bitsPerData, threshold;
+    private long[] offsets;
+    private int[] ends;
+    private byte[] masks;
+    private int entries;
+
+    public QuadrantIndex(MemoryController encodedMatrix, int headerSize, int bitsPerData, int height, int width){
+        this(encodedMatrix,headerSize,bitsPerData,height,width,defaultThreshold);
+    }
+
+    public QuadrantIndex(MemoryController encodedMatrix, int headerSize, int bitsPerData, int height, int width, int threshold){
+        if(threshold<=0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        this.encodedMatrix = encodedMatrix;
+        this.headerSize = headerSize;
+        this.bitsPerData = bitsPerData;
+        this.threshold = threshold;
+        int capacity = (int)Math.max(4,Math.min(Integer.MAX_VALUE/3,encodedMatrix.size()/threshold));
+        offsets = new long[capacity*3];
+        ends = new int[capacity];
+        masks = new byte[capacity];
+        if(headerSize<encodedMatrix.size()){
+            build(new FrameStack(height,width),headerSize);
+        }
+        offsets = Arrays.copyOf(offsets,entries*3);
+        ends = Arrays.copyOf(ends,entries);
+        masks = Arrays.copyOf(masks,entries);
+    }
+
+    private QuadrantIndex(MemoryController encodedMatrix, int headerSize, int bitsPerData, int threshold, long[] offsets, int[] ends, byte[] masks){
+        this.encodedMatrix = encodedMatrix;
+        this.headerSize = headerSize;
+        this.bitsPerData = bitsPerData;
+        this.threshold = threshold;
+        this.offsets = offsets;
+        this.ends = ends;
+        this.masks = masks;
+        entries = ends.length;
+    }
+
+    public static QuadrantIndex read(DataInputStream input, MemoryController encodedMatrix, int headerSize, int bitsPerData) throws IOException{
+        int threshold = input.readInt(), entries = input.readInt();
+        if(threshold<=0||entries<0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        long[] offsets = new long[entries*3];
+        int[] ends = new int[entries];
+        byte[] masks = new byte[entries];
+        for(int i = 0; i<offsets.length; i++){
+            offsets[i] = input.readLong();
+        }
+        for(int i = 0; i<entries; i++){
+            ends[i] = input.readInt();
+        }
+        input.readFully(masks);
+        return new QuadrantIndex(encodedMatrix,headerSize,bitsPerData,threshold,offsets,ends,masks);
+    }
+
+    public void write(DataOutputStream output) throws IOException{
+        output.writeInt(threshold);
+        output.writeInt(entries);
+        for(int i = 0; i<entries*3; i++){
+            output.writeLong(offsets[i]);
+        }
+        for(int i = 0; i<entries; i++){
+            output.writeInt(ends[i]);
+        }
+        output.write(masks,0,entries);
+    }
+
+    public int byteSize(){
+        return 8+entries*29;
+    }
+
+    private long build(FrameStack stack, long index){
+        if(!encodedMatrix.getBit(index)){
+            return index+1;
+        }
+        if(stack.size()<=1){
+            return index+1+bitsPerData;
+        }
+        int entry = entries++;
+        if(entry==ends.length){
+            offsets = Arrays.copyOf(offsets,entry*6);
+            ends = Arrays.copyOf(ends,entry*2);
+            masks = Arrays.copyOf(masks,entry*2);
+        }
+        int mask = 0;
+        long childIndex = index+1;
+        for(int q = 0; q<4; q++){
+            if(stack.pushChild(q)){
+                if(q>0){
+                    offsets[entry*3+q-1] = childIndex-index;
+                }
+                int childEntry = entries;
+                childIndex = build(stack,childIndex);
+                if(entries>childEntry){
+                    mask|=1<<q;
+                }
+                stack.pop();
+            }
+        }
+        if(mask==0&&childIndex-index<threshold){
+            entries--;
+        }else{
+            ends[entry] = entries;
+            masks[entry] = (byte)mask;
+        }
+        return childIndex;
+    }
+
+    public long descend(int r, int c, FrameStack stack){
+        stack.reset();
+        long index = headerSize;
+        stack.setIndex(index);
+        int entry = entries>0?0:-1;
+        while(entry!=-1){
+            int quadrant = stack.quadrantOf(r,c);
+            stack.pushChild(quadrant);
+            index+=childOffset(entry,quadrant);
+            stack.setIndex(index);
+            entry = childEntry(entry,quadrant);
+        }
+        while(stack.size()>1&&encodedMatrix.getBit(index)){
+            int quadrant = stack.quadrantOf(r,c);
+            int depth = stack.depth(), height = stack.height(), width = stack.width();
+            int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+            index++;
+            for(int q = 0; q<quadrant; q++){
+                if(stack.hasChild(depth,q)){
+                    index = skip(index,(q&2)==0?nHeight:height-nHeight,(q&1)==0?nWidth:width-nWidth);
+                }
+            }
+            stack.pushChild(quadrant);
+            stack.setIndex(index);
+        }
+        return index;
+    }
+
+    public int root(){
+        return entries>0?0:-1;
+    }
+
+    public long childOffset(int entry, int quadrant){
+        return quadrant==0?1:offsets[entry*3+quadrant-1];
+    }
+
+    public int childEntry(int entry, int quadrant){
+        int mask = masks[entry];
+        if((mask>>>quadrant&1)==0){
+            return -1;
+        }
+        int child = entry+1;
+        for(int q = 0; q<quadrant; q++){
+            if((mask>>>q&1)!=0){
+                child = ends[child];
+            }
+        }
+        return child;
+    }
+
+    private long skip(long index, int height, int width){
+        if(!encodedMatrix.getBit(index)){
+            return index+1;
+        }
+        if(height==1&&width==1){
+            return index+1+bitsPerData;
+        }
+        int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+        index = skip(index+1,nHeight,nWidth);
+        if(width>nWidth){
+            index = skip(index,nHeight,width-nWidth);
+        }
+        if(height>nHeight){
+            index = skip(index,height-nHeight,nWidth);
+            if(width>nWidth){
+                index = skip(index,height-nHeight,width-nWidth);
+            }
+        }
+        return index;
+    }
+
+    public int entries(){
+        return entries;
+    }
+
+    public int threshold(){
+        return threshold;
+    }
+
+    public long estimateBitSize(){
+        return (long)entries*(3*64+32+8);
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.function.BiFunction;
+
+public class QuadrantTreeBuilder<E> {
+
+    public static final int defaultBufferSize = 1<<20, mergeFactor = 16;
+    private final int height, width, bitsPerData, dataBytes, bufferSize;
+    private final E defaultItem;
+    private final BiFunction<E,Integer,byte[]> encoder;
+    private final File spillDirectory;
+    private final ArrayList<File> runs;
+    private final ArrayList<Integer> runLevels;
+    private long[] keys, keyScratch;
+    private Object[] values, valueScratch;
+    private int buffered, headerSize;
+    private long refSize, dataSize;
+    private boolean sorted;
+
+    public QuadrantTreeBuilder(int height, int width, int bitsPerData, E defaultItem, BiFunction<E,Integer,byte[]> encoder){
+        this(height,width,bitsPerData,defaultItem,encoder,defaultBufferSize,null);
+    }
+
+    public QuadrantTreeBuilder(int height, int width, int bitsPerData, E defaultItem, BiFunction<E,Integer,byte[]> encoder, int bufferSize, File spillDirectory){
+        if(height<=0||width<=0||bitsPerData<=0||bitsPerData>255||defaultItem==null||bufferSize<=0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        this.height = height;
+        this.width = width;
+        this.bitsPerData = bitsPerData;
+        this.defaultItem = defaultItem;
+        this.encoder = encoder;
+        this.bufferSize = bufferSize;
+        this.spillDirectory = spillDirectory;
+        dataBytes = Main.roundUpDiv(bitsPerData,8);
+        runs = new ArrayList<>();
+        runLevels = new ArrayList<>();
+        keys = new long[Math.min(bufferSize,1024)];
+        values = new Object[keys.length];
+        sorted = true;
+    }
+
+    public int height(){
+        return height;
+    }
+
+    public int width(){
+        return width;
+    }
+
+    public long refSize(){
+        return refSize;
+    }
+
+    public long dataSize(){
+        return dataSize;
+    }
+
+    public int headerSize(){
+        return headerSize;
+    }
+
+    public int spilledRuns(){
+        return runs.size();
+    }
+
+    public QuadrantTreeBuilder<E> add(int r, int c, E value){
+        if(value==null||r<0||c<0||r>=height||c>=width){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        if(buffered==bufferSize){
+            spill();
+        }
+        if(buffered==keys.length){
+            int capacity = (int)Math.min(bufferSize,keys.length*2L);
+            keys = Arrays.copyOf(keys,capacity);
+            values = Arrays.copyOf(values,capacity);
+        }
+        long key = Quadrant.zOrderKey(height,width,r,c);
+        sorted&=buffered==0||keys[buffered-1]<=key;
+        keys[buffered] = key;
+        values[buffered++] = value;
+        return this;
+    }
+
+    public QuadrantTreeBuilder<E> addAll(Iterable<DataPoint<E>> points){
+        for(DataPoint<E> point : points){
+            add(point.row,point.column,point.data);
+        }
+        return this;
+    }
+
+    private void sortBuffer(){
+        if(sorted){
+            return;
+        }
+        if(keyScratch==null||keyScratch.length<buffered){
+            keyScratch = new long[keys.length];
+            valueScratch = new Object[keys.length];
+        }
+        long[] fromKeys = keys, toKeys = keyScratch;
+        Object[] fromValues = values, toValues = valueScratch;
+        for(int run = 1; run<buffered; run*=2){
+            for(int start = 0; start<buffered; start+=run*2){
+                int mid = Math.min(start+run,buffered), end = Math.min(start+run*2,buffered);
+                int left = start, right = mid;
+                for(int i = start; i<end; i++){
+                    if(right>=end||(left<mid&&fromKeys[left]<=fromKeys[right])){
+                        toKeys[i] = fromKeys[left];
+                        toValues[i] = fromValues[left++];
+                    }else{
+                        toKeys[i] = fromKeys[right];
+                        toValues[i] = fromValues[right++];
+                    }
+                }
+            }
+            long[] keySwap = fromKeys;
+            fromKeys = toKeys;
+            toKeys = keySwap;
+            Object[] valueSwap = fromValues;
+            fromValues = toValues;
+            toValues = valueSwap;
+        }
+        keys = fromKeys;
+        values = fromValues;
+        keyScratch = toKeys;
+        valueScratch = toValues;
+        sorted = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E value(int i){
+        return (E)values[i];
+    }
+
+    private void spill(){
+        sortBuffer();
+        try{
+            File file = File.createTempFile("qte",".run",spillDirectory);
+            file.deleteOnExit();
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            for(int i = 0; i<buffered; i++){
+                if(i+1<buffered&&keys[i+1]==keys[i]){
+                    continue;
+                }
+                E value = value(i);
+                output.writeLong(keys[i]);
+                if(value.equals(defaultItem)){
+                    output.writeBoolean(false);
+                }else{
+                    output.writeBoolean(true);
+                    output.write(encoder.apply(value,bitsPerData),0,dataBytes);
+                }
+            }
+            output.close();
+            runs.add(file);
+            runLevels.add(0);
+        }catch(IOException e){
+            throw new RuntimeException("Could not spill entries");
+        }
+        buffered = 0;
+        sorted = true;
+        for(int level = 0; runs.size()>=mergeFactor&&runLevels.get(runs.size()-mergeFactor)==level; level++){
+            mergeRuns(runs.size()-mergeFactor,level+1);
+        }
+    }
+
+    private void mergeRuns(int from, int level){
+        ArrayList<Run> sources = new ArrayList<>();
+        try{
+            File file = File.createTempFile("qte",".run",spillDirectory);
+            file.deleteOnExit();
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            for(int i = from; i<runs.size(); i++){
+                sources.add(new FileRun(sources.size(),runs.get(i)));
+            }
+            PriorityQueue<Run> queue = queue(sources);
+            while(!queue.isEmpty()){
+                Run source = poll(queue);
+                output.writeLong(source.key);
+                output.writeBoolean(source.set);
+                if(source.set){
+                    output.write(source.data,0,dataBytes);
+                }
+                requeue(queue,source);
+            }
+            output.close();
+            while(runs.size()>from){
+                runs.remove(runs.size()-1).delete();
+                runLevels.remove(runLevels.size()-1);
+            }
+            runs.add(file);
+            runLevels.add(level);
+        }catch(IOException e){
+            throw new RuntimeException("Could not merge spilled entries");
+        }finally{
+            for(Run source : sources){
+                source.close();
+            }
+        }
+    }
+
+    private PriorityQueue<Run> queue(ArrayList<Run> sources) throws IOException{
+        PriorityQueue<Run> queue = new PriorityQueue<>((a,b)->a.key!=b.key?Long.compare(a.key,b.key):Integer.compare(a.order,b.order));
+        for(Run source : sources){
+            requeue(queue,source);
+        }
+        return queue;
+    }
+
+    private Run poll(PriorityQueue<Run> queue) throws IOException{
+        Run source = queue.poll();
+        while(!queue.isEmpty()&&queue.peek().key==source.key){
+            Run older = source;
+            source = queue.poll();
+            requeue(queue,older);
+        }
+        return source;
+    }
+
+    private void requeue(PriorityQueue<Run> queue, Run source) throws IOException{
+        if(source.advance()){
+            queue.add(source);
+        }
+    }
+
+    public MemoryController build(MemoryController controller){
+        controller.clear();
+        MemoryController.MemoryBitOutputStream writer = controller.outputStream();
+        build(writer);
+        controller.trim();
+        return controller;
+    }
+
+    public void build(BitOutputStream writer){
+        sortBuffer();
+        ArrayList<Run> sources = new ArrayList<>();
+        try{
+            for(File file : runs){
+                sources.add(new FileRun(sources.size(),file));
+            }
+            sources.add(new BufferRun(sources.size()));
+            emit(writer,sources);
+        }catch(IOException e){
+            throw new RuntimeException("Could not read spilled entries");
+        }finally{
+            for(Run source : sources){
+                source.close();
+            }
+            for(File file : runs){
+                file.delete();
+            }
+            runs.clear();
+            runLevels.clear();
+            buffered = 0;
+            sorted = true;
+        }
+    }
+
+    private void emit(BitOutputStream writer, ArrayList<Run> sources) throws IOException{
+        BiFunction<Integer,Integer,byte[]> intEncoder = BitEncoders.intEncoder;
+        writer.writeBits(8,bitsPerData,intEncoder);
+        writer.writeBits(bitsPerData,defaultItem,encoder);
+        int heightBits = Main.logBaseCeil(height+1,2);
+        int widthBits = Main.logBaseCeil(width+1,2);
+        writer.writeBits(5,heightBits-1,intEncoder);
+        writer.writeBits(heightBits,height,intEncoder);
+        writer.writeBits(5,widthBits-1,intEncoder);
+        writer.writeBits(widthBits,width,intEncoder);
+        headerSize = 8+bitsPerData+5+heightBits+5+widthBits;
+        refSize = 0;
+        dataSize = 0;
+        PriorityQueue<Run> queue = queue(sources);
+        FrameStack stack = new FrameStack(height,width);
+        while(!queue.isEmpty()){
+            Run source = poll(queue);
+            if(source.set){
+                long cell = source.cell();
+                int r = (int)(cell>>>32), c = (int)cell;
+                while(!stack.contains(r,c)||stack.size()>1){
+                    boolean found = stack.contains(r,c);
+                    writer.writeBit(found);
+                    refSize++;
+                    if(found){
+                        stack.next();
+                    }else{
+                        stack.skipChildren();
+                    }
+                }
+                writer.writeBit(true);
+                writer.writeBits(bitsPerData,source.data);
+                refSize++;
+                dataSize+=bitsPerData;
+                stack.next();
+            }
+            requeue(queue,source);
+        }
+        while(!stack.done()){
+            writer.writeBit(false);
+            refSize++;
+            stack.skipChildren();
+        }
+    }
+
+    private abstract class Run{
+
+        private final int order;
+        protected long key;
+        protected boolean set;
+        protected byte[] data;
+
+        private Run(int order){
+            this.order = order;
+        }
+
+        protected abstract boolean advance() throws IOException;
+
+        protected void close(){}
+
+        private long cell(){
+            return Quadrant.zOrderCell(height,width,key);
+        }
+    }
+
+    private class BufferRun extends Run{
+
+        private int index;
+
+        private BufferRun(int order){
+            super(order);
+            index = -1;
+        }
+
+        protected boolean advance(){
+            while(++index<buffered){
+                if(index+1<buffered&&keys[index+1]==keys[index]){
+                    continue;
+                }
+                key = keys[index];
+                E value = value(index);
+                set = !value.equals(defaultItem);
+                data = set?encoder.apply(value,bitsPerData):null;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private class FileRun extends Run{
+
+        private final DataInputStream input;
+
+        private FileRun(int order, File file) throws IOException{
+            super(order);
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            data = new byte[dataBytes];
+        }
+
+        protected boolean advance() throws IOException{
+            try{
+                key = input.readLong();
+            }catch(EOFException e){
+                return false;
+            }
+            set = input.readBoolean();
+            if(set){
+                input.readFully(data);
+            }
+            return true;
+        }
+
+        protected void close(){
+            try{
+                input.close();
+            }catch(IOException e){
+                throw new RuntimeException("Close failed");
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiFunction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+public class QuadrantTreeContainer {
+
+    public static final int magic = 0x51544543, version = 2, headerBytes = 32, footerBytes = 12;
+    private static final int indexFlag = 1;
+
+    public static void write(MemoryController encodedMatrix, QuadrantIndex index, File file){
+        long payloadBits = encodedMatrix.size();
+        long payloadBytes = Main.roundUpDiv(payloadBits,8);
+        long indexOffset = index==null?0:headerBytes+payloadBytes;
+        try{
+            ByteArrayOutputStream headerBuffer = new ByteArrayOutputStream(headerBytes);
+            DataOutputStream header = new DataOutputStream(headerBuffer);
+            header.writeInt(magic);
+            header.writeShort(version);
+            header.writeShort(index==null?0:indexFlag);
+            header.writeLong(payloadBits);
+            header.writeLong(indexOffset);
+            header.writeInt(index==null?0:index.byteSize());
+            header.writeInt(0);
+            ByteArrayOutputStream indexBuffer = new ByteArrayOutputStream(index==null?0:index.byteSize());
+            if(index!=null){
+                index.write(new DataOutputStream(indexBuffer));
+            }
+            CRC32 metaChecksum = new CRC32();
+            metaChecksum.update(headerBuffer.toByteArray());
+            metaChecksum.update(indexBuffer.toByteArray());
+            if(file.getParentFile()!=null){
+                file.getParentFile().mkdirs();
+            }
+            File temp = new File(file.getPath()+".tmp");
+            OutputStream fileOutput = new BufferedOutputStream(new FileOutputStream(temp));
+            CheckedOutputStream checked = new CheckedOutputStream(fileOutput,new CRC32());
+            DataOutputStream output = new DataOutputStream(checked);
+            headerBuffer.writeTo(fileOutput);
+            long i = 0;
+            for(; i+64<=payloadBits; i+=64){
+                output.writeLong(encodedMatrix.getBitsAsLong(i,64));
+            }
+            if(i<payloadBits){
+                int remaining = (int)(payloadBits-i);
+                long last = encodedMatrix.getBitsAsLong(i,remaining)<<(64-remaining);
+                for(int b = 0; b<Main.roundUpDiv(remaining,8); b++){
+                    output.writeByte((int)(last>>>(56-8*b)));
+                }
+            }
+            output.flush();
+            long payloadChecksum = checked.getChecksum().getValue();
+            indexBuffer.writeTo(fileOutput);
+            DataOutputStream footer = new DataOutputStream(fileOutput);
+            footer.writeInt((int)metaChecksum.getValue());
+            footer.writeInt((int)payloadChecksum);
+            footer.writeInt(magic);
+            footer.close();
+            Files.move(temp.toPath(),file.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        }catch(IOException e){
+            throw new RuntimeException("Could not write "+file);
+        }
+    }
+
+    public static <E> QuadrantTreeMatrix<E> open(File file, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder){
+        try(FileChannel channel = FileChannel.open(file.toPath(),StandardOpenOption.READ)){
+            long length = channel.size();
+            if(length<headerBytes+footerBytes){
+                throw new IllegalArgumentException("Invalid container "+file);
+            }
+            ByteBuffer header = read(channel,0,headerBytes);
+            ByteBuffer footer = read(channel,length-footerBytes,footerBytes);
+            if(header.getInt(0)!=magic||footer.getInt(8)!=magic){
+                throw new IllegalArgumentException("Invalid container "+file);
+            }
+            int fileVersion = header.getShort(4), flags = header.getShort(6);
+            if(fileVersion!=version){
+                throw new IllegalArgumentException("Unsupported container version "+fileVersion);
+            }
+            long payloadBits = header.getLong(8), indexOffset = header.getLong(16);
+            int indexLength = header.getInt(24);
+            long payloadEnd = headerBytes+Main.roundUpDiv(payloadBits,8);
+            boolean hasIndex = (flags&indexFlag)!=0;
+            if(payloadBits<0||payloadEnd+(hasIndex?indexLength:0)+footerBytes!=length||(hasIndex&&indexOffset!=payloadEnd)){
+                throw new IllegalArgumentException("Invalid container "+file);
+            }
+            ByteBuffer index = read(channel,payloadEnd,hasIndex?indexLength:0);
+            CRC32 metaChecksum = new CRC32();
+            metaChecksum.update(header.array());
+            metaChecksum.update(index.array());
+            if((int)metaChecksum.getValue()!=footer.getInt(0)){
+                throw new IllegalStateException("Container checksum mismatch in "+file);
+            }
+            MemoryController encodedMatrix = MemoryController.mapReadOnly(file,headerBytes,payloadBits);
+            if(!hasIndex){
+                return QuadrantTreeMatrix.readOnly(encodedMatrix,bitEncoder,bitDecoder);
+            }
+            StandardHeader<E> standardHeader = new StandardHeader<>(encodedMatrix,bitDecoder);
+            QuadrantIndex quadrantIndex = QuadrantIndex.read(new DataInputStream(new ByteArrayInputStream(index.array())),encodedMatrix,standardHeader.headerSize,standardHeader.bitsPerData);
+            return new QuadrantTreeMatrix<>(encodedMatrix,bitEncoder,bitDecoder,quadrantIndex);
+        }catch(IOException e){
+            throw new RuntimeException("Could not open "+file);
+        }
+    }
+
+    public static boolean verify(File file){
+        try(FileChannel channel = FileChannel.open(file.toPath(),StandardOpenOption.READ)){
+            long length = channel.size();
+            if(length<headerBytes+footerBytes){
+                return false;
+            }
+            ByteBuffer header = read(channel,0,headerBytes);
+            ByteBuffer footer = read(channel,length-footerBytes,footerBytes);
+            if(header.getInt(0)!=magic||footer.getInt(8)!=magic){
+                return false;
+            }
+            long payloadEnd = headerBytes+Main.roundUpDiv(header.getLong(8),8);
+            if(payloadEnd>length-footerBytes){
+                return false;
+            }
+            CRC32 metaChecksum = new CRC32(), payloadChecksum = new CRC32();
+            metaChecksum.update(header.array());
+            metaChecksum.update(read(channel,payloadEnd,(int)(length-footerBytes-payloadEnd)).array());
+            for(long position = headerBytes; position<payloadEnd; position+=1<<16){
+                payloadChecksum.update(read(channel,position,(int)Math.min(1<<16,payloadEnd-position)).array());
+            }
+            return (int)metaChecksum.getValue()==footer.getInt(0)&&(int)payloadChecksum.getValue()==footer.getInt(4);
+        }catch(IOException e){
+            return false;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer,position+buffer.position())<0){
+                throw new EOFException();
+            }
+        }
+        return buffer;
+    }
+}
@@ -1,4 +1,8 @@
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiFunction;
 
 public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
@@ -9,8 +13,11 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
     private E defaultItem;
     private MemoryController controller;
     private MemoryController.MemoryBitOutputStream writer;
-    private int refSize, dataSize, headerSize;
-    private int bitsPerData, longestX, remainingItems;
+    private int headerSize;
+    private long refSize, dataSize;
+    private SummedAreaTable nonDefault;
+    private int bitsPerData, longestX;
+    public static final int parallelCutoff = 1<<16;
 
     public QuadrantTreeEncoder(E[][] m, int bitsPerData, BiFunction<E,Integer,byte[]> e, BiFunction<byte[],Integer,E> d){
         matrix = m;
@@ -35,11 +42,11 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
         decoder = d;
     }
 
-    public int refSize(){
+    public long refSize(){
         return refSize;
     }
 
-    public int dataSize(){
+    public long dataSize(){
         return dataSize;
     }
 
@@ -48,6 +55,14 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
     }
 
     public MemoryController encodeMatrix(MemoryController controller){
+        return encodeMatrix(controller,null);
+    }
+
+    public MemoryController encodeMatrixParallel(MemoryController controller){
+        return encodeMatrix(controller,ForkJoinPool.commonPool());
+    }
+
+    public MemoryController encodeMatrix(MemoryController controller, ForkJoinPool pool){
         controller.clear();
         this.controller = controller;
         writer = controller.outputStream();
@@ -55,27 +70,13 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
         dataSize = 0;
         headerSize = 0;
         longestX = 0;
-        HashMap<E,Integer> countMap = new HashMap<>();
-        int maxCount = 0, itemCount = 0;
-        defaultItem = null;
+        int itemCount = 0;
         for(int r = 0; r<matrix.length;r++){
             longestX = Math.max(longestX,matrix[r].length);
             itemCount+=matrix[r].length;
-            for(int c = 0; c<matrix[r].length;c++){
-                E item = matrix[r][c];
-                Integer val = countMap.get(matrix[r][c]);
-                if(val==null){
-                    val = 0;
-                }
-                if(++val > maxCount){
-                    maxCount = val;
-                    defaultItem = item;
-                }
-                countMap.put(matrix[r][c], val);
-            }
         }
-        remainingItems = itemCount-maxCount;
-        dataSize = remainingItems*bitsPerData;
+        int maxCount = pool==null?countDefault():pool.invoke(new CountTask(0,matrix.length)).pickDefault();
+        dataSize = (long)(itemCount-maxCount)*bitsPerData;
         BiFunction<Integer,Integer,byte[]> intEncoder = BitEncoders.intEncoder;
         writer.writeBits(8,bitsPerData,intEncoder);
         writer.writeBits(bitsPerData,defaultItem,encoder);
@@ -88,8 +89,15 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
         writer.writeBits(widthBits,width,intEncoder);
         headerSize=8+bitsPerData+5+heightBits+5+widthBits;
         if((longestX>1||matrix.length>1)&&dataSize>0){
-            doPathSetup(new Quadrant(0,0,height,width));
-            //controller.delete(lastData,controller.size());
+            nonDefault = new SummedAreaTable(height,width,(r,c)->c<matrix[r].length&&!matrix[r][c].equals(defaultItem),pool);
+            if(pool==null){
+                emit(writer,0,0,height,width);
+            }else{
+                for(MemoryController piece : pool.invoke(new EncodeTask(new Quadrant(0,0,height,width))).pieces){
+                    copyBits(piece,controller);
+                }
+            }
+            nonDefault = null;
         }else{
             writer.writeBit(false);
         }
@@ -98,6 +106,34 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
         return controller;
     }
 
+    private int countDefault(){
+        HashMap<E,Integer> countMap = new HashMap<>();
+        int maxCount = 0;
+        defaultItem = null;
+        for(int r = 0; r<matrix.length;r++){
+            for(int c = 0; c<matrix[r].length;c++){
+                E item = matrix[r][c];
+                Integer val = countMap.get(matrix[r][c]);
+                if(val==null){
+                    val = 0;
+                }
+                if(++val > maxCount){
+                    maxCount = val;
+                    defaultItem = item;
+                }
+                countMap.put(matrix[r][c], val);
+            }
+        }
+        return maxCount;
+    }
+
+    private static void copyBits(MemoryController from, MemoryController to){
+        for(long i = 0; i<from.size(); i+=64){
+            int toCopy = (int)Math.min(64,from.size()-i);
+            to.setBitsAsLong(to.size(),toCopy,from.getBitsAsLong(i,toCopy));
+        }
+    }
+
     public Matrix<E> getMatrix(MemoryController controller, double cachePercent) {
         return new QuadrantTreeMatrix<>(
                 controller,
@@ -107,51 +143,135 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
         );
     }
 
-    private boolean encodeHelper(Quadrant frame){
-        int yPos = frame.yPos, xPos = frame.xPos;
-        if(yPos>=matrix.length){
-            return false;
+    private class CountTask extends RecursiveTask<CountTask>{
+
+        private static final long serialVersionUID = 1L;
+        private final int startRow, endRow;
+        private final HashMap<E,int[]> counts;
+
+        private CountTask(int startRow, int endRow){
+            this.startRow = startRow;
+            this.endRow = endRow;
+            counts = new HashMap<>();
         }
-        if(frame.size()<=1){
-            if(xPos>=matrix[yPos].length){
-                if(xPos<longestX){
-                    writer.writeBit(false);
+
+        protected CountTask compute(){
+            int cells = 0;
+            for(int r = startRow; r<endRow; r++){
+                cells+=matrix[r].length;
+            }
+            if(endRow-startRow>1&&cells>parallelCutoff){
+                int mid = (startRow+endRow)>>>1;
+                CountTask fork = new CountTask(startRow,mid);
+                fork.fork();
+                CountTask bottom = new CountTask(mid,endRow).compute();
+                CountTask top = fork.join();
+                for(Map.Entry<E,int[]> entry : bottom.counts.entrySet()){
+                    int[] count = top.counts.get(entry.getKey());
+                    if(count==null){
+                        top.counts.put(entry.getKey(),entry.getValue());
+                    }else{
+                        count[0]+=entry.getValue()[0];
+                    }
                 }
-                return false;
+                return top;
             }
-            E item = matrix[yPos][xPos];
-            if(item.equals(defaultItem)){
-                writer.writeBit(false);
-                return false;
+            for(int r = startRow; r<endRow; r++){
+                for(int c = 0; c<matrix[r].length; c++){
+                    int[] count = counts.get(matrix[r][c]);
+                    if(count==null){
+                        counts.put(matrix[r][c],new int[]{1});
+                    }else{
+                        count[0]++;
+                    }
+                }
             }
-            remainingItems--;
-            writer.writeBit(true);
-            writer.writeBits(bitsPerData,item,encoder);
-            return true;
-        }else{
-            boolean foundData = false;
+            return this;
+        }
+
+        private int pickDefault(){
+            int maxCount = 0;
+            HashMap<E,int[]> tied = new HashMap<>();
+            for(Map.Entry<E,int[]> entry : counts.entrySet()){
+                int count = entry.getValue()[0];
+                if(count>maxCount){
+                    maxCount = count;
+                    tied.clear();
+                }
+                if(count==maxCount){
+                    tied.put(entry.getKey(),new int[1]);
+                }
+            }
+            defaultItem = null;
+            if(tied.size()==1){
+                defaultItem = tied.keySet().iterator().next();
+                return maxCount;
+            }
+            for(int r = 0; r<matrix.length; r++){
+                for(int c = 0; c<matrix[r].length; c++){
+                    int[] count = tied.get(matrix[r][c]);
+                    if(count!=null&&++count[0]==maxCount){
+                        defaultItem = matrix[r][c];
+                        return maxCount;
+                    }
+                }
+            }
+            return maxCount;
+        }
+    }
+
+    private class EncodeTask extends RecursiveTask<EncodeTask>{
+
+        private static final long serialVersionUID = 1L;
+        private final Quadrant frame;
+        private final ArrayList<MemoryController> pieces;
+
+        private EncodeTask(Quadrant frame){
+            this.frame = frame;
+            pieces = new ArrayList<>();
+        }
+
+        protected EncodeTask compute(){
+            MemoryController piece = new MemoryController();
+            pieces.add(piece);
+            if(frame.size()<=parallelCutoff||nonDefault.count(frame)==0){
+                emit(piece.outputStream(),frame.yPos,frame.xPos,frame.height,frame.width);
+                return this;
+            }
+            piece.setBit(0,true);
+            ArrayList<EncodeTask> children = new ArrayList<>();
             for(Quadrant child : frame.getChildren()){
-                foundData|=doPathSetup(child);
+                children.add(new EncodeTask(child));
+            }
+            invokeAll(children);
+            for(EncodeTask child : children){
+                pieces.addAll(child.pieces);
             }
-            return foundData;
+            return this;
         }
     }
 
-    private boolean doPathSetup(Quadrant frame){
-        if(remainingItems==0){
+    private void emit(MemoryController.MemoryBitOutputStream writer, int yPos, int xPos, int height, int width){
+        if(nonDefault.count(yPos,xPos,height,width)==0){
             writer.writeBit(false);
-            return false;
+            return;
         }
-        int prevLength = controller.size();
-        if(frame.size()>1){
-            writer.writeBit(true);
+        writer.writeBit(true);
+        if(height==1&&width==1){
+            writer.writeBits(bitsPerData,matrix[yPos][xPos],encoder);
+            return;
         }
-        boolean gotData = encodeHelper(frame);
-        if(frame.size()>1&&!gotData){
-            controller.delete(prevLength,controller.size());
-            writer.writeBit(false);
+        int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+        emit(writer,yPos,xPos,nHeight,nWidth);
+        if(width>nWidth){
+            emit(writer,yPos,xPos+nWidth,nHeight,width-nWidth);
+        }
+        if(height>nHeight){
+            emit(writer,yPos+nHeight,xPos,height-nHeight,nWidth);
+            if(width>nWidth){
+                emit(writer,yPos+nHeight,xPos+nWidth,height-nHeight,width-nWidth);
+            }
         }
-        return gotData;
     }
 
     public E[][] decodeMatrix(MemoryController controller){
@@ -159,6 +279,16 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
     }
 
     public static <V> V[][] decodeMatrix(MemoryController controller, BiFunction<byte[],Integer,V> decoder){
+        MatrixVisitor.DenseCollector<V> collector = new MatrixVisitor.DenseCollector<>();
+        decode(controller,decoder,collector);
+        return collector.matrix;
+    }
+
+    public void decode(MemoryController controller, MatrixVisitor<E> visitor){
+        decode(controller,decoder,visitor);
+    }
+
+    public static <V> void decode(MemoryController controller, BiFunction<byte[],Integer,V> decoder, MatrixVisitor<V> visitor){
         MemoryController.MemoryBitInputStream input = controller.inputStream();
         BiFunction<byte[],Integer,Integer> intDecoder = BitEncoders.intDecoder;
         int bitsPerData = input.readBits(8,intDecoder);
@@ -167,26 +297,20 @@ public class QuadrantTreeEncoder<E> implements MatrixEncoder<E> {
         int height = input.readBits(heightBits,intDecoder);
         int widthBits = input.readBits(5,intDecoder)+1;
         int width = input.readBits(widthBits,intDecoder);
-        Quadrant current = new Quadrant(0,0,height,width);
-        V[][] matrix = (V[][])new Object[height][width];
-        while(current!=null&&input.hasNext()){
+        visitor.start(height,width);
+        FrameStack current = new FrameStack(height,width);
+        while(!current.done()&&input.hasNext()){
             boolean nextInst = input.readBit();
-            boolean readMode = current.width<=1&&current.height<=1;;
+            boolean readMode = current.width()<=1&&current.height()<=1;
             if(nextInst){
                 if(readMode){
-                    V data = input.readBits(bitsPerData,decoder);
-                    matrix[current.yPos][current.xPos] = data;
+                    visitor.visit(current.y(),current.x(),input.readBits(bitsPerData,decoder));
                 }
-                current = current.getNext();
+                current.next();
             }else{
-                for(int r = 0; r<current.height; r++){
-                    for (int c = 0; c<current.width; c++){
-                        matrix[current.yPos+r][current.xPos+c] = defaultItem;
-                    }
-                }
-                current = current.skipChildren();
+                visitor.visitDefault(current.y(),current.x(),current.height(),current.width(),defaultItem);
+                current.skipChildren();
             }
         }
-        return matrix;
     }
-}
\ No newline at end of file
+}
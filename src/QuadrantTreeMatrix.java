@@ -1,21 +1,56 @@
 import java.io.File;
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiFunction;
+import java.util.function.DoubleToLongFunction;
+import java.util.function.LongToDoubleFunction;
 
 public class QuadrantTreeMatrix<E> extends Matrix<E>{
+
+    public static final StorageType defaultStorage = StorageType.CHUNKED;
+    public static final int maxCacheSize = 1<<22;
+
     private final MemoryController encodedMatrix;
-    private final CacheManager<Integer,Integer> cache;
+    private final CacheManager<Long,Long> cache;
+    private final LongCacheManager longCache;
     public final BiFunction<E,Integer,byte[]> bitEncoder;
     public final BiFunction<byte[],Integer,E> bitDecoder;
-    private final LinkedList<Pair<Quadrant,Integer>> cacheQueue;
+    private final FrameStack frameStack;
+    private final ThreadLocal<FrameStack> localFrames;
     private final BiFunction<Integer,Integer,byte[]> intEncoder;
     private final BiFunction<byte[],Integer,Integer> intDecoder;
     public final double cachePercent;
+    public final boolean concurrent;
     private final StandardHeader<E> header;
+    private final QuadrantIndex index;
 
     public QuadrantTreeMatrix(MemoryController encodedMatrix, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent){
+        this(encodedMatrix,bitEncoder,bitDecoder,cachePercent,false);
+    }
+
+    public QuadrantTreeMatrix(MemoryController encodedMatrix, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent, boolean concurrent){
+        this(encodedMatrix,bitEncoder,bitDecoder,cachePercent,concurrent,0);
+    }
+
+    public QuadrantTreeMatrix(MemoryController encodedMatrix, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, int indexThreshold){
+        this(encodedMatrix,bitEncoder,bitDecoder,0,true,indexThreshold);
+    }
+
+    QuadrantTreeMatrix(MemoryController encodedMatrix, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, QuadrantIndex index){
+        this(encodedMatrix,bitEncoder,bitDecoder,0,true,0,index);
+    }
+
+    private QuadrantTreeMatrix(MemoryController encodedMatrix, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent, boolean concurrent, int indexThreshold){
+        this(encodedMatrix,bitEncoder,bitDecoder,cachePercent,concurrent,indexThreshold,null);
+    }
+
+    private QuadrantTreeMatrix(MemoryController encodedMatrix, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent, boolean concurrent, int indexThreshold, QuadrantIndex index){
         this.cachePercent = cachePercent;
+        this.concurrent = concurrent;
         this.encodedMatrix = encodedMatrix;
         this.bitEncoder = bitEncoder;
         this.bitDecoder = bitDecoder;
@@ -24,23 +59,32 @@ public class QuadrantTreeMatrix<E> extends Matrix<E>{
         header = new StandardHeader<>(encodedMatrix,bitDecoder);
         int height = height();
         int width = width();
-        Quadrant baseFrame = new Quadrant(0,0,height,width);
-        cache = new LRUCache<>((int)Math.round(baseFrame.size()*cachePercent));
-        cacheQueue = new LinkedList<>();
-        putIntoCache(baseFrame,0);
+        int cacheSize = (int)Math.min(maxCacheSize,Math.round((double)height*width*cachePercent));
+        cache = concurrent?new TinyLfuCache(cacheSize):new LongLongLruMap(cacheSize);
+        longCache = cache instanceof LongCacheManager?(LongCacheManager)cache:null;
+        frameStack = new FrameStack(height,width);
+        localFrames = ThreadLocal.withInitial(()->new FrameStack(height,width));
+        if(index!=null){
+            this.index = index;
+            return;
+        }
         trim();
-        Pair<Quadrant,Integer> info = getClosestIndexFromCache(0,0,true);
-        info = decodeUntil(0,0,info);
-        for(int c = 0; c<width; c++){
-            info = decodeUntil(0,c,info);
+        if(indexThreshold>0){
+            this.index = new QuadrantIndex(encodedMatrix,header.headerSize,header.bitsPerData,height,width,indexThreshold);
+        }else{
+            this.index = null;
+            warmCache();
         }
-        cacheQueue();
-        info = getClosestIndexFromCache(0,0,true);
-        info = decodeUntil(0,0,info);
-        for(int r = 0; r<height;r++){
-            info = decodeUntil(r,0,info);
+    }
+
+    private void warmCache(){
+        FrameStack stack = frames();
+        for(int c = 0; c<width(); c++){
+            locate(0,c,stack);
+        }
+        for(int r = 0; r<height();r++){
+            locate(r,0,stack);
         }
-        cacheQueue();
     }
 
     public QuadrantTreeMatrix(E[][] matrix, int bitsPerData, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent){
@@ -49,7 +93,7 @@ public class QuadrantTreeMatrix<E> extends Matrix<E>{
                 bitsPerData,
                 bitEncoder,
                 bitDecoder
-        ).encodeMatrix(new MemoryController()),bitEncoder,bitDecoder,cachePercent);
+        ).encodeMatrix(new MemoryController(defaultStorage)),bitEncoder,bitDecoder,cachePercent);
     }
 
     public QuadrantTreeMatrix(E[][] matrix, int bitsPerData, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent, File source){
@@ -61,71 +105,111 @@ public class QuadrantTreeMatrix<E> extends Matrix<E>{
         ).encodeMatrix(new MemoryController(source)),bitEncoder,bitDecoder,cachePercent);
     }
 
-    public int estimateBitSize(){
-        int cacheSize = 0;/*, referenceSize = 32, intSize = 32;
+    public static <E> QuadrantTreeMatrix<E> readOnly(MemoryController encodedMatrix, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder){
+        return new QuadrantTreeMatrix<>(encodedMatrix,bitEncoder,bitDecoder,QuadrantIndex.defaultThreshold);
+    }
+
+    public static <E> QuadrantTreeMatrix<E> open(File file, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder){
+        return QuadrantTreeContainer.open(file,bitEncoder,bitDecoder);
+    }
+
+    public void save(File file){
+        save(file,true);
+    }
+
+    public void save(File file, boolean withIndex){
+        QuadrantIndex toSave = index;
+        if(withIndex&&toSave==null){
+            toSave = new QuadrantIndex(encodedMatrix,header.headerSize,header.bitsPerData,height(),width());
+        }
+        QuadrantTreeContainer.write(encodedMatrix,withIndex?toSave:null,file);
+    }
+
+    public boolean isReadOnly(){
+        return index!=null;
+    }
+
+    public long estimateBitSize(){
+        long cacheSize = 0;/*, referenceSize = 32, intSize = 32;
         for(Integer key : cache.keySet()){
             cacheSize+=intSize+referenceSize;
             cacheSize+=intSize+intSize;
         }
         */
+        if(index!=null){
+            cacheSize+=index.estimateBitSize();
+        }
         return encodedMatrix.size()+cacheSize;
     }
 
     public void trim(){
+        if(index!=null){
+            return;
+        }
         encodedMatrix.trim();
     }
 
-    private void cacheQueue(){
-        while(cacheQueue.size()>0){
-            Pair<Quadrant,Integer> toCache = cacheQueue.removeLast();
-            if(toCache.value==null){
-                cache.improveItem(frameHash(toCache.key));
-            }else{
-                putIntoCache(toCache.key,toCache.value);
-            }
+    public E set(int r, int c, E data){
+        if(data==null){
+            throw new IllegalArgumentException("Invalid parameters");
         }
+        set(r,c,header.defaultItem.equals(data),data,0);
+        return data;
     }
 
-    public E set(int r, int c, E data){
-        if(data==null||r<0||c<0||r>=height()||c>=width()){
+    protected long setRaw(int r, int c, long bits){
+        int bitsPerData = header.bitsPerData;
+        if(bitsPerData<64){
+            bits&=(1L<<bitsPerData)-1;
+        }
+        set(r,c,bits==header.defaultBits,null,bits);
+        return bits;
+    }
+
+    private void writeData(MemoryController controller, long index, E data, long bits){
+        if(data!=null){
+            controller.setBits(index,header.bitsPerData,data,bitEncoder);
+        }else{
+            controller.setBitsAsLong(index,header.bitsPerData,bits);
+        }
+    }
+
+    private void set(int r, int c, boolean isDefault, E data, long bits){
+        checkWritable();
+        if(r<0||c<0||r>=height()||c>=width()){
             throw new IllegalArgumentException("Invalid parameters");
         }
-        Pair<Quadrant,Integer> frameInfo = decodeUntil(r,c,getClosestIndexFromCache(r,c,true));
-        int dataIndex = frameInfo.value;
-        Quadrant baseFrame = frameInfo.key;
-        if(!header.defaultItem.equals(data)){
+        FrameStack stack = frames();
+        long dataIndex = locate(r,c,stack);
+        int level = stack.depth();
+        if(!isDefault){
             if(encodedMatrix.getBit(dataIndex)){
-                encodedMatrix.setBits(dataIndex+1,header.bitsPerData,data,bitEncoder);
+                writeData(encodedMatrix,dataIndex+1,data,bits);
             }else{
-                MemoryController toAdd = encodeChunk(frameInfo.key,r,c,data,dataIndex);
-                encodedMatrix.setBits(dataIndex+toAdd.size(),encodedMatrix.size()-dataIndex-1,encodedMatrix.getBits(dataIndex+1,encodedMatrix.size()-dataIndex-1));
-                encodedMatrix.setBits(dataIndex,toAdd.size(),toAdd.getBits(0,toAdd.size()));
-                while(baseFrame.parent!=null){
-                    baseFrame = baseFrame.parent;
-                    for(Quadrant frame : baseFrame.getChildrenAfter(r,c)){
-                        int index = getIndexFromCache(frame,0);
-                        if(index!=-1){
-                            putIntoCache(frame,index+toAdd.size()-1);
-                        }
-                    }
-                }
+                MemoryController toAdd = encodeChunk(stack,r,c,data,bits,dataIndex);
+                int chunkSize = (int)toAdd.size();
+                encodedMatrix.insert(dataIndex+1,chunkSize-1);
+                encodedMatrix.setBits(dataIndex,chunkSize,toAdd.getBits(0,chunkSize));
+                shiftCache(stack,level-1,chunkSize-1);
+                cachePath(stack,level+1);
             }
         }else{
             if(encodedMatrix.getBit(dataIndex)){
                 int removed = header.bitsPerData;
-                int deleteStart = dataIndex+1, deleteEnd = dataIndex+removed+1;
-                while(baseFrame.parent!=null){
-                    baseFrame = baseFrame.parent;
-                    int ignoreIndex = cacheQueue.getLast().value;
-                    if(!hasData(baseFrame,ignoreIndex,removed,dataIndex-=ignoreIndex)){
-                        int children = baseFrame.width==1||baseFrame.height==1?2:4;
+                long deleteStart = dataIndex+1, deleteEnd = dataIndex+removed+1;
+                while(level>0){
+                    level--;
+                    long ignoreIndex = stack.index(level+1)-stack.index(level);
+                    dataIndex = stack.index(level);
+                    int children = stack.width(level)==1||stack.height(level)==1?2:4;
+                    if(!hasData(children,ignoreIndex,removed,dataIndex)){
                         deleteStart = Math.min(dataIndex+1,deleteStart);
                         deleteEnd = Math.max(dataIndex+1+removed+children,deleteEnd);
-                        while(cacheQueue.getLast().key.parent==baseFrame){
-                            cacheQueue.removeLast();
-                        }
-                        for(Quadrant frame : baseFrame.getChildren()){
-                            putIntoCache(frame,-1);
+                        for(int q = 1; q<4; q++){
+                            long hash = stack.childHash(level,q);
+                            if(hash!=-1){
+                                putIntoCache(hash,-1);
+                            }
                         }
                         removed+=children;
                     }else{
@@ -134,32 +218,199 @@ public class QuadrantTreeMatrix<E> extends Matrix<E>{
                 }
                 encodedMatrix.delete(deleteStart,deleteEnd);
                 encodedMatrix.setBit(deleteStart-1,false);
-                while(baseFrame!=null){
-                    for(Quadrant frame : baseFrame.getChildrenAfter(r,c)){
-                        int index = getIndexFromCache(frame,0);
-                        if(index!=-1){
-                            putIntoCache(frame,index-removed);
-                        }
+                shiftCache(stack,level,-removed);
+            }
+        }
+    }
+
+    private void shiftCache(FrameStack stack, int fromLevel, long shift){
+        for(int level = Math.min(fromLevel,stack.depth()-1); level>=0; level--){
+            for(int q = stack.quadrant(level+1)+1; q<4; q++){
+                long hash = stack.childHash(level,q);
+                if(hash!=-1){
+                    long index = cachedIndex(hash);
+                    if(index!=-1){
+                        putIntoCache(hash,index+shift);
                     }
-                    baseFrame = baseFrame.parent;
                 }
-                //printBits();
             }
         }
-        cacheQueue();
-        return data;
+    }
+
+    private void cachePath(FrameStack stack, int toLevel){
+        for(int level = stack.depth(); level>=Math.max(1,toLevel); level--){
+            if(stack.quadrant(level)>0){
+                putIntoCache(stack.hash(level),stack.index(level)-stack.index(level-1));
+            }
+        }
+    }
+
+    private void checkWritable(){
+        if(index!=null){
+            throw new IllegalStateException("Matrix is read only");
+        }
+    }
+
+    public void setAll(Iterable<DataPoint<E>> updates){
+        checkWritable();
+        ArrayList<DataPoint<E>> sorted = new ArrayList<>();
+        for(DataPoint<E> update : updates){
+            if(update.data==null||update.row<0||update.column<0||update.row>=height()||update.column>=width()){
+                throw new IllegalArgumentException("Invalid parameters");
+            }
+            sorted.add(update);
+        }
+        if(sorted.isEmpty()){
+            return;
+        }
+        int height = height(), width = width();
+        long[] keys = new long[sorted.size()];
+        Integer[] order = new Integer[sorted.size()];
+        for(int i = 0; i<keys.length; i++){
+            DataPoint<E> update = sorted.get(i);
+            keys[i] = Quadrant.zOrderKey(height,width,update.row,update.column);
+            order[i] = i;
+        }
+        Arrays.sort(order,(a,b)->Long.compare(keys[a],keys[b]));
+        ArrayList<DataPoint<E>> inOrder = new ArrayList<>(order.length);
+        for(int i : order){
+            inOrder.add(sorted.get(i));
+        }
+        MemoryController merged = new BatchMerger(inOrder).merge();
+        encodedMatrix.clear();
+        copyBits(merged,0,merged.size(),encodedMatrix);
+        encodedMatrix.trim();
+        cache.clear();
+        warmCache();
+    }
+
+    private static void copyBits(MemoryController from, long start, long end, MemoryController to){
+        for(long i = start; i<end; i+=64){
+            int toCopy = (int)Math.min(64,end-i);
+            to.setBitsAsLong(to.size(),toCopy,from.getBitsAsLong(i,toCopy));
+        }
+    }
+
+    private class BatchMerger{
+
+        private final ArrayList<DataPoint<E>> updates;
+        private final MemoryController merged;
+        private final MemoryController.MemoryBitOutputStream writer;
+        private int next;
+        private long oldIndex;
+
+        private BatchMerger(ArrayList<DataPoint<E>> updates){
+            this.updates = updates;
+            merged = new MemoryController();
+            writer = merged.outputStream();
+        }
+
+        private MemoryController merge(){
+            copyBits(encodedMatrix,0,header.headerSize,merged);
+            oldIndex = header.headerSize;
+            merge(new Quadrant(0,0,height(),width()),false);
+            return merged;
+        }
+
+        private boolean merge(Quadrant frame, boolean oldDefault){
+            int end = next;
+            while(end<updates.size()&&frame.contains(updates.get(end).row,updates.get(end).column)){
+                end++;
+            }
+            if(end==next){
+                if(oldDefault){
+                    writer.writeBit(false);
+                    return false;
+                }
+                long start = oldIndex;
+                skip(frame.height,frame.width);
+                copyBits(encodedMatrix,start,oldIndex,merged);
+                return encodedMatrix.getBit(start);
+            }
+            boolean oldBit = !oldDefault&&encodedMatrix.getBit(oldIndex);
+            if(!oldDefault){
+                oldIndex++;
+            }
+            if(frame.size()==1){
+                E data = updates.get(end-1).data;
+                next = end;
+                if(oldBit){
+                    oldIndex+=header.bitsPerData;
+                }
+                if(header.defaultItem.equals(data)){
+                    writer.writeBit(false);
+                    return false;
+                }
+                writer.writeBit(true);
+                writer.writeBits(header.bitsPerData,data,bitEncoder);
+                return true;
+            }
+            long mark = merged.size();
+            writer.writeBit(true);
+            boolean foundData = false;
+            for(Quadrant child : frame.getChildren()){
+                foundData|=merge(child,!oldBit);
+            }
+            if(!foundData){
+                merged.delete(mark,merged.size());
+                writer.writeBit(false);
+            }
+            return foundData;
+        }
+
+        private void skip(int height, int width){
+            if(!encodedMatrix.getBit(oldIndex++)){
+                return;
+            }
+            if(height==1&&width==1){
+                oldIndex+=header.bitsPerData;
+                return;
+            }
+            int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+            skip(nHeight,nWidth);
+            if(width>nWidth){
+                skip(nHeight,width-nWidth);
+            }
+            if(height>nHeight){
+                skip(height-nHeight,nWidth);
+                if(width>nWidth){
+                    skip(height-nHeight,width-nWidth);
+                }
+            }
+        }
+    }
+
+    private long skipFrame(long index, int height, int width){
+        if(index>=encodedMatrix.size()||!encodedMatrix.getBit(index)){
+            return index+1;
+        }
+        index++;
+        if(height==1&&width==1){
+            return index+header.bitsPerData;
+        }
+        int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+        index = skipFrame(index,nHeight,nWidth);
+        if(width>nWidth){
+            index = skipFrame(index,nHeight,width-nWidth);
+        }
+        if(height>nHeight){
+            index = skipFrame(index,height-nHeight,nWidth);
+            if(width>nWidth){
+                index = skipFrame(index,height-nHeight,width-nWidth);
+            }
+        }
+        return index;
     }
 
     public void printBits(){
         System.out.println(encodedMatrix.bitToString(header.headerSize));
     }
 
-    private boolean hasData(Quadrant frame, int ignore, int size, int parentIndex){
+    private boolean hasData(int children, long ignore, int size, long parentIndex){
         if(!encodedMatrix.getBit(parentIndex)){
             return false;
         }
-        int iterations = frame.width==1||frame.height==1?2:4;
-        for(int i = 1; i<=iterations;i++){
+        for(int i = 1; i<=children;i++){
             if(i<ignore){
                 if(encodedMatrix.getBit(parentIndex+i)){
                     return true;
@@ -173,143 +424,146 @@ public class QuadrantTreeMatrix<E> extends Matrix<E>{
         return false;
     }
 
-    private MemoryController encodeChunk(Quadrant baseFrame, int r, int c, E data, int dataIndex){
+    private MemoryController encodeChunk(FrameStack stack, int r, int c, E data, long bits, long dataIndex){
         MemoryController chunk = new MemoryController();
         MemoryController.MemoryBitOutputStream writer = chunk.outputStream();
-        int parentIndex = dataIndex-getIndexFromCache(baseFrame,dataIndex-1);
-        Quadrant currentFrame = baseFrame;
-        while(currentFrame!=null&&baseFrame.contains(currentFrame)){
-            if(currentFrame.contains(r,c)){
-                cacheQueue.add(new Pair<>(currentFrame,dataIndex-parentIndex));
-                parentIndex = dataIndex;
-                writer.writeBit(true);
-                if(currentFrame.size()<=1){
-                    writer.writeBits(header.bitsPerData,data,bitEncoder);
-                    dataIndex+=header.bitsPerData;
+        int baseLevel = stack.depth();
+        while(true){
+            stack.setIndex(dataIndex+chunk.size());
+            writer.writeBit(true);
+            if(stack.size()<=1){
+                writeData(chunk,chunk.size(),data,bits);
+                break;
+            }
+            int quadrant = stack.quadrantOf(r,c);
+            for(int q = 0; q<quadrant; q++){
+                if(stack.hasChild(stack.depth(),q)){
+                    writer.writeBit(false);
+                }
+            }
+            stack.pushChild(quadrant);
+        }
+        for(int level = stack.depth()-1; level>=baseLevel; level--){
+            for(int q = stack.quadrant(level+1)+1; q<4; q++){
+                if(stack.hasChild(level,q)){
+                    writer.writeBit(false);
                 }
-                currentFrame = currentFrame.getNext();
-            }else{
-                writer.writeBit(false);
-                currentFrame = currentFrame.skipChildren();
             }
-            dataIndex++;
         }
         return chunk;
     }
 
-    private void putIntoCache(Quadrant frame, int index){
-        if(frame.parent!=null&&frame.quadrant==0){
-            return;
-        }
-        if(index>=0){
-            cache.put(frameHash(frame),index);
+    private void putIntoCache(long hash, long index){
+        if(longCache!=null){
+            if(index>=0){
+                longCache.putLong(hash,index);
+            }else{
+                longCache.removeLong(hash);
+            }
+        }else if(index>=0){
+            cache.put(hash,index);
         }else{
-            cache.remove(frameHash(frame));
+            cache.remove(hash);
         }
     }
 
-    public E get(int r, int c){
+    private long cachedIndex(long hash){
+        if(longCache!=null){
+            return longCache.getLongNoCache(hash);
+        }
+        Long index = cache.getNoCache(hash);
+        return index!=null?index:-1;
+    }
+
+    private FrameStack frames(){
+        return concurrent?localFrames.get():frameStack;
+    }
+
+    private long dataIndex(int r, int c){
         if(r<0||c<0||r>=height()||c>=width()){
             throw new IllegalArgumentException("Invalid parameters");
         }
-        int dataIndex = decodeUntil(r,c,getClosestIndexFromCache(r,c,true)).value;
-        cacheQueue();
+        long dataIndex = locate(r,c,frames());
         if(dataIndex<encodedMatrix.size()&&encodedMatrix.getBit(dataIndex)){
-            return encodedMatrix.getBits(dataIndex+1,header.bitsPerData,bitDecoder);
+            return dataIndex+1;
+        }
+        return -1;
+    }
+
+    public E get(int r, int c){
+        long dataIndex = dataIndex(r,c);
+        if(dataIndex!=-1){
+            return encodedMatrix.getBits(dataIndex,header.bitsPerData,bitDecoder);
         }
         return header.defaultItem;
     }
 
-    private Pair<Quadrant,Integer> decodeUntil(int r, int c, Pair<Quadrant,Integer> frameInfo){
-        int dataIndex = frameInfo.value;
-        Quadrant currentFrame = frameInfo.key;
-        Quadrant goal = new Quadrant(r,c,1,1);
-        int parentIndex = dataIndex-getIndexFromCache(currentFrame,dataIndex-1);
-        while(dataIndex<encodedMatrix.size()&&!goal.equals(currentFrame)){
-            boolean contains = currentFrame.contains(goal.yPos,goal.xPos);
-            if(contains){
-                cacheQueue.add(new Pair<>(currentFrame,dataIndex-parentIndex));
-                parentIndex = dataIndex;
+    protected long getRaw(int r, int c){
+        long dataIndex = dataIndex(r,c);
+        if(dataIndex!=-1){
+            return encodedMatrix.getBitsAsLong(dataIndex,header.bitsPerData);
+        }
+        return header.defaultBits;
+    }
+
+    private long locate(int r, int c, FrameStack stack){
+        if(index!=null){
+            return decodeUntil(r,c,stack,index.descend(r,c,stack));
+        }
+        stack.reset();
+        long dataIndex = header.headerSize;
+        stack.setIndex(dataIndex);
+        while(stack.size()>1){
+            int quadrant = stack.quadrantOf(r,c);
+            long cacheIndex = childIndex(stack,quadrant,dataIndex);
+            while(cacheIndex==-1&&quadrant>0){
+                cacheIndex = childIndex(stack,--quadrant,dataIndex);
             }
-            if(encodedMatrix.getBit(dataIndex)){
-                if(currentFrame.size()<=1){
-                    dataIndex+=header.bitsPerData;
-                }
-                currentFrame = currentFrame.getNext();
-            }else{
-                if(currentFrame.contains(goal.yPos,goal.xPos)){
-                    return new Pair<>(currentFrame,dataIndex);
-                }
-                currentFrame = currentFrame.skipChildren();
+            if(cacheIndex==-1){
+                break;
+            }
+            stack.pushChild(quadrant);
+            dataIndex+=cacheIndex;
+            stack.setIndex(dataIndex);
+            if(!stack.contains(r,c)){
+                break;
             }
-            dataIndex++;
         }
-        cacheQueue.add(new Pair<>(currentFrame,dataIndex-parentIndex));
-        return new Pair<>(currentFrame,dataIndex);
+        dataIndex = decodeUntil(r,c,stack,dataIndex);
+        cachePath(stack,1);
+        return dataIndex;
     }
 
-    private Pair<Quadrant,Integer> getClosestIndexFromCache(int r, int c, boolean doCache){
-        Quadrant baseFrame = new Quadrant(0,0,height(),width());
-        if(doCache){
-            cacheQueue.add(new Pair<>(baseFrame,0));
-        }
-        int dataIndex = header.headerSize;
-        while(true){
-            Quadrant current = baseFrame.getChildContaining(r,c);
-            int cacheIndex = getIndexFromCache(current,dataIndex);
-            if(cacheIndex!=-1){
-                dataIndex+=cacheIndex;
-                if(current.size()==1){
-                    return new Pair<>(current,dataIndex);
-                }else{
-                    if(doCache){
-                        cacheQueue.add(new Pair<>(current,cacheIndex));
-                    }
-                    baseFrame = current;
+    private long decodeUntil(int r, int c, FrameStack stack, long dataIndex){
+        long size = encodedMatrix.size();
+        while(dataIndex<size&&!(stack.size()==1&&stack.contains(r,c))){
+            boolean contains = stack.contains(r,c);
+            stack.setIndex(dataIndex);
+            if(encodedMatrix.getBit(dataIndex)){
+                if(stack.size()<=1){
+                    dataIndex+=header.bitsPerData;
                 }
+                stack.next();
             }else{
-                while(current.quadrant>0){
-                    current = current.prevSibling();
-                    cacheIndex = getIndexFromCache(current,dataIndex);
-                    if(cacheIndex!=-1){
-                        if(doCache){
-                            cacheQueue.add(new Pair<>(current,cacheIndex));
-                        }
-                        dataIndex+=cacheIndex;
-                        break;
-                    }
-                }
-                if(cacheIndex==-1){
-                    if(doCache){
-                        cacheQueue.removeLast();
-                    }
-                    return new Pair<>(baseFrame,dataIndex);
+                if(contains){
+                    break;
                 }
-                return new Pair<>(current,dataIndex);
+                stack.skipChildren();
             }
+            dataIndex++;
         }
+        stack.setIndex(dataIndex);
+        return dataIndex;
     }
 
-    private int getIndexFromCache(Quadrant frame, int parentIndex, boolean doCache){
-        int hash = frameHash(frame);
-        if(doCache){
-            cache.improveItem(hash);
+    private long childIndex(FrameStack stack, int quadrant, long parentIndex){
+        if(!stack.hasChild(stack.depth(),quadrant)){
+            return -1;
         }
-        if(frame.parent==null){
-            return 0;
-        }else if(frame.quadrant==0){
+        if(quadrant==0){
             return encodedMatrix.getBit(parentIndex)?1:-1;
         }
-        Integer index = cache.getNoCache(hash);
-        return index!=null?index:-1;
-    }
-
-    private int frameHash(Quadrant frame){
-        return frame.yPos*width()+frame.xPos;
-    }
-
-    private int getIndexFromCache(Quadrant frame, int parentIndex){
-        return getIndexFromCache(frame,parentIndex,false);
+        return cachedIndex(stack.childHash(stack.depth(),quadrant));
     }
 
     public int height(){
@@ -324,75 +578,941 @@ public class QuadrantTreeMatrix<E> extends Matrix<E>{
         return QuadrantTreeEncoder.decodeMatrix(encodedMatrix,bitDecoder);
     }
 
+    public void visit(MatrixVisitor<E> visitor){
+        QuadrantTreeEncoder.decode(encodedMatrix,bitDecoder,visitor);
+    }
+
+    public void multiply(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool){
+        double defaultValue = startProduct(x,y,values,transpose,header);
+        if(pool==null||pool.getParallelism()<=1){
+            new ProductTask(x,y,values,defaultValue,transpose,null).multiplyFrame(header.headerSize,0,0,height(),width());
+            return;
+        }
+        int depth = 2;
+        for(int parallelism = pool.getParallelism(); parallelism>1; parallelism>>>=1){
+            depth++;
+        }
+        HashMap<Integer,ArrayList<long[]>> bands = new HashMap<>();
+        planProduct(header.headerSize,index!=null?index.root():-1,0,0,height(),width(),depth,false,transpose,bands);
+        ArrayList<ProductTask> tasks = new ArrayList<>();
+        for(ArrayList<long[]> frames : bands.values()){
+            tasks.add(new ProductTask(x,y,values,defaultValue,transpose,frames));
+        }
+        pool.submit(()->ForkJoinTask.invokeAll(tasks)).join();
+    }
+
+    private long planProduct(long start, int entry, int row, int column, int height, int width, int depth, boolean needEnd, boolean transpose, HashMap<Integer,ArrayList<long[]>> bands){
+        if(start>=encodedMatrix.size()||!encodedMatrix.getBit(start)){
+            return start+1;
+        }
+        if(depth==0||height==1&&width==1){
+            bands.computeIfAbsent(transpose?column:row,(k)->new ArrayList<>()).add(new long[]{start,row,column,height,width});
+            return needEnd?skipFrame(start,height,width):-1;
+        }
+        int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+        long[] offsets = new long[4];
+        for(int q = 1; q<4; q++){
+            offsets[q] = -1;
+            if(((q&2)==0||height>nHeight)&&((q&1)==0||width>nWidth)){
+                long hash = (long)(row+((q&2)==0?0:nHeight))*width()+column+((q&1)==0?0:nWidth);
+                offsets[q] = entry!=-1?index.childOffset(entry,q):index==null?cachedIndex(hash):-1;
+            }
+        }
+        long end = -1;
+        for(int q = 0; q<4; q++){
+            if(((q&2)!=0&&height<=nHeight)||((q&1)!=0&&width<=nWidth)){
+                continue;
+            }
+            long childStart = start+1;
+            if(q>0){
+                childStart = offsets[q]!=-1?start+offsets[q]:end;
+                if(offsets[q]==-1&&index==null){
+                    putIntoCache((long)(row+((q&2)==0?0:nHeight))*width()+column+((q&1)==0?0:nWidth),childStart-start);
+                }
+            }
+            int next = q+1;
+            while(next<4&&((next&2)!=0&&height<=nHeight||(next&1)!=0&&width<=nWidth)){
+                next++;
+            }
+            boolean needChildEnd = next<4?offsets[next]==-1:needEnd;
+            end = planProduct(childStart,entry!=-1?index.childEntry(entry,q):-1,row+((q&2)==0?0:nHeight),column+((q&1)==0?0:nWidth),
+                    (q&2)==0?nHeight:height-nHeight,(q&1)==0?nWidth:width-nWidth,depth-1,needChildEnd,transpose,bands);
+        }
+        return end;
+    }
+
+    public QuadrantTreeMatrix<E> multiply(QuadrantTreeMatrix<E> other, LongToDoubleFunction values, DoubleToLongFunction bits){
+        return new QuadrantTreeMatrix<>(multiply(other,values,bits,new MemoryController(defaultStorage),null),bitEncoder,bitDecoder,cachePercent);
+    }
+
+    public MemoryController multiply(QuadrantTreeMatrix<E> other, LongToDoubleFunction values, DoubleToLongFunction bits, MemoryController controller, ForkJoinPool pool){
+        if(other==null||values==null||bits==null||width()!=other.height()){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        if(header.bitsPerData>64||other.header.bitsPerData>64){
+            throw new IllegalStateException("Data is too wide to multiply");
+        }
+        if(values.applyAsDouble(header.defaultBits)!=0||values.applyAsDouble(other.header.defaultBits)!=0){
+            throw new IllegalStateException("Default item must be zero to multiply");
+        }
+        return new TreeProduct(this,other,values,bits).encode(controller,pool);
+    }
+
     public Iterator<DataPoint<E>> iterator(int r, int c, int h, int w, IteratorType type){
         Quadrant toIterate = new Quadrant(r,c,h,w);
         if(type==IteratorType.DEFAULT){
             return new TreeIterator<>(this, toIterate);
         }
+        if(type==IteratorType.NON_DEFAULT){
+            return new SparseTreeIterator<>(this, toIterate);
+        }
+        if(type==IteratorType.BY_ROW||type==IteratorType.BY_COL){
+            return new LineIterator<>(this, toIterate,type==IteratorType.BY_COL);
+        }
         return new GenericIterator<>(this, toIterate,type);
     }
 
+    public TreeCursor cursor(){
+        return cursor(0,0,height(),width());
+    }
+
+    public TreeCursor cursor(int r, int c, int h, int w){
+        return new TreeCursor(this,new Quadrant(r,c,h,w));
+    }
+
+    private class ProductTask extends RecursiveAction{
+
+        private static final long serialVersionUID = 1L;
+        private final double[] x, y;
+        private final LongToDoubleFunction values;
+        private final double defaultValue;
+        private final boolean transpose;
+        private final ArrayList<long[]> frames;
+
+        private ProductTask(double[] x, double[] y, LongToDoubleFunction values, double defaultValue, boolean transpose, ArrayList<long[]> frames){
+            this.x = x;
+            this.y = y;
+            this.values = values;
+            this.defaultValue = defaultValue;
+            this.transpose = transpose;
+            this.frames = frames;
+        }
+
+        protected void compute(){
+            for(long[] frame : frames){
+                multiplyFrame(frame[0],(int)frame[1],(int)frame[2],(int)frame[3],(int)frame[4]);
+            }
+        }
+
+        private long multiplyFrame(long index, int row, int column, int height, int width){
+            if(index>=encodedMatrix.size()||!encodedMatrix.getBit(index)){
+                return index+1;
+            }
+            index++;
+            if(height==1&&width==1){
+                double value = values.applyAsDouble(encodedMatrix.getBitsAsLong(index,header.bitsPerData))-defaultValue;
+                if(transpose){
+                    y[column]+=value*x[row];
+                }else{
+                    y[row]+=value*x[column];
+                }
+                return index+header.bitsPerData;
+            }
+            int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+            index = multiplyFrame(index,row,column,nHeight,nWidth);
+            if(width>nWidth){
+                index = multiplyFrame(index,row,column+nWidth,nHeight,width-nWidth);
+            }
+            if(height>nHeight){
+                index = multiplyFrame(index,row+nHeight,column,height-nHeight,nWidth);
+                if(width>nWidth){
+                    index = multiplyFrame(index,row+nHeight,column+nWidth,height-nHeight,width-nWidth);
+                }
+            }
+            return index;
+        }
+    }
+
+    private static class TreeProduct{
+
+        private static final int indexThreshold = 64;
+        private final QuadrantTreeMatrix<?> left, right;
+        private final QuadrantIndex leftIndex, rightIndex;
+        private final LongToDoubleFunction values;
+        private final DoubleToLongFunction bits;
+        private final int bitsPerData;
+
+        private TreeProduct(QuadrantTreeMatrix<?> left, QuadrantTreeMatrix<?> right, LongToDoubleFunction values, DoubleToLongFunction bits){
+            this.left = left;
+            this.right = right;
+            this.values = values;
+            this.bits = bits;
+            bitsPerData = left.header.bitsPerData;
+            leftIndex = index(left);
+            rightIndex = index(right);
+        }
+
+        private static QuadrantIndex index(QuadrantTreeMatrix<?> matrix){
+            if(matrix.index!=null){
+                return matrix.index;
+            }
+            return new QuadrantIndex(matrix.encodedMatrix,matrix.header.headerSize,matrix.header.bitsPerData,matrix.height(),matrix.width(),indexThreshold);
+        }
+
+        private MemoryController encode(MemoryController controller, ForkJoinPool pool){
+            controller.clear();
+            MemoryController.MemoryBitOutputStream writer = controller.outputStream();
+            int height = left.height(), width = right.width();
+            int heightBits = Main.logBaseCeil(height+1,2);
+            int widthBits = Main.logBaseCeil(width+1,2);
+            writer.writeBitsAsLong(8,bitsPerData);
+            writer.writeBitsAsLong(bitsPerData,bits.applyAsLong(0));
+            writer.writeBitsAsLong(5,heightBits-1);
+            writer.writeBitsAsLong(heightBits,height);
+            writer.writeBitsAsLong(5,widthBits-1);
+            writer.writeBitsAsLong(widthBits,width);
+            long[] pairs = new long[0];
+            if(isSet(left,left.header.headerSize)&&isSet(right,right.header.headerSize)){
+                pairs = new long[]{left.header.headerSize,leftIndex.root(),right.header.headerSize,rightIndex.root(),left.width()};
+            }
+            if(pool==null||pool.getParallelism()<=1){
+                emit(controller,height,width,pairs);
+            }else{
+                int depth = 2;
+                for(int parallelism = pool.getParallelism(); parallelism>1; parallelism>>>=1){
+                    depth++;
+                }
+                for(MemoryController piece : pool.invoke(new PieceTask(height,width,pairs,depth)).pieces){
+                    copyBits(piece,0,piece.size(),controller);
+                }
+            }
+            controller.trim();
+            return controller;
+        }
+
+        private boolean emit(MemoryController out, int height, int width, long[] pairs){
+            long start = out.size();
+            if(pairs.length==0){
+                out.setBit(start,false);
+                return false;
+            }
+            if(height==1&&width==1){
+                double value = 0;
+                for(int p = 0; p<pairs.length; p+=5){
+                    value+=dot(pairs[p],(int)pairs[p+1],pairs[p+2],(int)pairs[p+3],(int)pairs[p+4]);
+                }
+                out.setBit(start,value!=0);
+                if(value!=0){
+                    out.setBitsAsLong(start+1,bitsPerData,bits.applyAsLong(value));
+                }
+                return value!=0;
+            }
+            out.setBit(start,true);
+            boolean nonDefault = false;
+            int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+            for(int q = 0; q<4; q++){
+                if(((q&2)==0||height>nHeight)&&((q&1)==0||width>nWidth)){
+                    nonDefault|=emit(out,(q&2)==0?nHeight:height-nHeight,(q&1)==0?nWidth:width-nWidth,childPairs(pairs,height,width,q));
+                }
+            }
+            if(!nonDefault){
+                out.delete(start,out.size());
+                out.setBit(start,false);
+            }
+            return nonDefault;
+        }
+
+        private long[] childPairs(long[] pairs, int height, int width, int quadrant){
+            long[] children = new long[pairs.length*2];
+            int count = 0, row = quadrant>>>1, column = quadrant&1;
+            for(int p = 0; p<pairs.length; p+=5){
+                int inner = (int)pairs[p+4], nInner = Math.max(1,inner/2);
+                for(int l = 0; l<2&&(l==0||inner>nInner); l++){
+                    long leftStart = childStart(left,leftIndex,pairs[p],(int)pairs[p+1],height,inner,row*2+l);
+                    if(!isSet(left,leftStart)){
+                        continue;
+                    }
+                    long rightStart = childStart(right,rightIndex,pairs[p+2],(int)pairs[p+3],inner,width,l*2+column);
+                    if(!isSet(right,rightStart)){
+                        continue;
+                    }
+                    children[count++] = leftStart;
+                    children[count++] = childEntry(leftIndex,(int)pairs[p+1],height,inner,row*2+l);
+                    children[count++] = rightStart;
+                    children[count++] = childEntry(rightIndex,(int)pairs[p+3],inner,width,l*2+column);
+                    children[count++] = l==0?nInner:inner-nInner;
+                }
+            }
+            return Arrays.copyOf(children,count);
+        }
+
+        private double dot(long leftStart, int leftEntry, long rightStart, int rightEntry, int inner){
+            if(inner==1){
+                return values.applyAsDouble(left.encodedMatrix.getBitsAsLong(leftStart+1,left.header.bitsPerData))
+                        *values.applyAsDouble(right.encodedMatrix.getBitsAsLong(rightStart+1,right.header.bitsPerData));
+            }
+            int nInner = Math.max(1,inner/2);
+            double sum = 0;
+            for(int l = 0; l<2&&(l==0||inner>nInner); l++){
+                long leftChild = childStart(left,leftIndex,leftStart,leftEntry,1,inner,l);
+                if(!isSet(left,leftChild)){
+                    continue;
+                }
+                long rightChild = childStart(right,rightIndex,rightStart,rightEntry,inner,1,l*2);
+                if(!isSet(right,rightChild)){
+                    continue;
+                }
+                sum+=dot(leftChild,childEntry(leftIndex,leftEntry,1,inner,l),rightChild,childEntry(rightIndex,rightEntry,inner,1,l*2),l==0?nInner:inner-nInner);
+            }
+            return sum;
+        }
+
+        private static boolean isSet(QuadrantTreeMatrix<?> matrix, long index){
+            return index<matrix.encodedMatrix.size()&&matrix.encodedMatrix.getBit(index);
+        }
+
+        private static long childStart(QuadrantTreeMatrix<?> matrix, QuadrantIndex index, long start, int entry, int height, int width, int quadrant){
+            if(height==1&&width==1){
+                return start;
+            }
+            if(quadrant==0){
+                return start+1;
+            }
+            if(entry!=-1){
+                return start+index.childOffset(entry,quadrant);
+            }
+            int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+            long childStart = start+1;
+            for(int q = 0; q<quadrant; q++){
+                if(((q&2)==0||height>nHeight)&&((q&1)==0||width>nWidth)){
+                    childStart = matrix.skipFrame(childStart,(q&2)==0?nHeight:height-nHeight,(q&1)==0?nWidth:width-nWidth);
+                }
+            }
+            return childStart;
+        }
+
+        private static int childEntry(QuadrantIndex index, int entry, int height, int width, int quadrant){
+            return entry==-1||height==1&&width==1?entry:index.childEntry(entry,quadrant);
+        }
+
+        private class PieceTask extends RecursiveTask<PieceTask>{
+
+            private static final long serialVersionUID = 1L;
+            private final int height, width, depth;
+            private final long[] pairs;
+            private final ArrayList<MemoryController> pieces;
+            private boolean nonDefault;
+
+            private PieceTask(int height, int width, long[] pairs, int depth){
+                this.height = height;
+                this.width = width;
+                this.pairs = pairs;
+                this.depth = depth;
+                pieces = new ArrayList<>();
+            }
+
+            protected PieceTask compute(){
+                MemoryController piece = new MemoryController();
+                pieces.add(piece);
+                if(depth==0||height==1&&width==1||pairs.length==0){
+                    nonDefault = emit(piece,height,width,pairs);
+                    return this;
+                }
+                ArrayList<PieceTask> children = new ArrayList<>();
+                int nHeight = Math.max(1,height/2), nWidth = Math.max(1,width/2);
+                for(int q = 0; q<4; q++){
+                    if(((q&2)==0||height>nHeight)&&((q&1)==0||width>nWidth)){
+                        children.add(new PieceTask((q&2)==0?nHeight:height-nHeight,(q&1)==0?nWidth:width-nWidth,childPairs(pairs,height,width,q),depth-1));
+                    }
+                }
+                invokeAll(children);
+                for(PieceTask child : children){
+                    nonDefault|=child.nonDefault;
+                }
+                piece.setBit(0,nonDefault);
+                if(nonDefault){
+                    for(PieceTask child : children){
+                        pieces.addAll(child.pieces);
+                    }
+                }
+                return this;
+            }
+        }
+    }
+
     private static class TreeIterator<V> implements Iterator<DataPoint<V>>{
 
+        private final TreeCursor cursor;
         private final QuadrantTreeMatrix<V> matrix;
-        private int index, readCount, defaultsRead;
-        private Quadrant current;
-        private final Quadrant readFrame;
 
         private TreeIterator(QuadrantTreeMatrix<V> matrix, Quadrant readFrame){
+            this.matrix = matrix;
+            cursor = new TreeCursor(matrix,readFrame);
+        }
+
+        public boolean hasNext(){
+            return cursor.hasNext();
+        }
+
+        public DataPoint<V> next(){
+            if(!cursor.next()){
+                throw new NoSuchElementException("Iterator has no more elements");
+            }
+            V datum = matrix.header.defaultItem;
+            if(!cursor.isDefault()){
+                datum = matrix.encodedMatrix.getBits(cursor.dataIndex,matrix.header.bitsPerData,matrix.bitDecoder);
+            }
+            return new DataPoint<>(datum,cursor.row,cursor.column);
+        }
+    }
+
+    private static class SparseTreeIterator<V> implements Iterator<DataPoint<V>>{
+
+        private final QuadrantTreeMatrix<V> matrix;
+        private final RegionWalker walker;
+        private boolean ready, finished;
+
+        private SparseTreeIterator(QuadrantTreeMatrix<V> matrix, Quadrant readFrame){
             if(matrix==null||readFrame==null||!new Quadrant(0,0, matrix.height(), matrix.width()).contains(readFrame)){
                 throw new IllegalArgumentException("Illegal Arguments");
             }
             this.matrix = matrix;
-            this.readFrame = readFrame;
-            int r = readFrame.yPos, c = readFrame.xPos;
-            Pair<Quadrant,Integer> frameInfo = matrix.getClosestIndexFromCache(r,c,true);
-            frameInfo = matrix.decodeUntil(r,c,frameInfo);
-            matrix.cacheQueue();
-            current = frameInfo.key;
-            index = frameInfo.value;
+            walker = new RegionWalker(matrix,readFrame);
         }
 
         public boolean hasNext(){
-            return readCount<readFrame.size();
+            while(!ready&&!finished){
+                if(!walker.next()){
+                    finished = true;
+                }else{
+                    ready = !walker.isDefault();
+                }
+            }
+            return ready;
         }
 
         public DataPoint<V> next(){
             if(!hasNext()){
                 throw new NoSuchElementException("Iterator has no more elements");
             }
+            ready = false;
+            return new DataPoint<>(matrix.encodedMatrix.getBits(walker.dataIndex(),matrix.header.bitsPerData,matrix.bitDecoder),walker.y(),walker.x());
+        }
+    }
+
+    private static class RegionWalker{
+
+        private final QuadrantTreeMatrix<?> matrix;
+        private final Quadrant region;
+        private final FrameStack stack;
+        private final long[] memo;
+        private final int[] entries, visited;
+        private final boolean[] expanded, inside;
+        private boolean started, leaf;
+
+        private RegionWalker(QuadrantTreeMatrix<?> matrix, Quadrant region){
+            this.matrix = matrix;
+            this.region = region;
+            stack = new FrameStack(matrix.height(),matrix.width());
+            int levels = FrameStack.maxDepth(matrix.height(),matrix.width())+1;
+            memo = new long[levels*5];
+            entries = new int[levels];
+            visited = new int[levels];
+            expanded = new boolean[levels];
+            inside = new boolean[levels];
+            stack.setIndex(matrix.header.headerSize);
+            entries[0] = matrix.index!=null?matrix.index.root():-1;
+        }
+
+        private boolean next(){
+            if(!started){
+                started = true;
+                if(region.size()<=0){
+                    stack.pop();
+                    return false;
+                }
+            }else if(stack.done()||!toNextFrame()){
+                return false;
+            }
+            descend();
+            return true;
+        }
+
+        private boolean isDefault(){
+            return !leaf;
+        }
+
+        private long dataIndex(){
+            return stack.index()+1;
+        }
+
+        private int y(){
+            return stack.y();
+        }
+
+        private int x(){
+            return stack.x();
+        }
+
+        private int height(){
+            return stack.height();
+        }
+
+        private int width(){
+            return stack.width();
+        }
+
+        private void descend(){
             MemoryController data = matrix.encodedMatrix;
             while(true){
-                if(index>=data.size() || defaultsRead > 0 || !data.getBit(index)){
-                    int prevCount = defaultsRead++;
-                    Quadrant prev = current;
-                    if(defaultsRead==current.size()){
-                        defaultsRead = 0;
-                        index++;
-                        current = current.skipChildren();
-                    }
-                    int dataR = prev.yPos+prevCount/prev.width;
-                    int dataC = prev.xPos+prevCount%prev.width;
-                    if(readFrame.contains(dataR,dataC)){
-                        readCount++;
-                        return new DataPoint<>(matrix.header.defaultItem,dataR,dataC);
+                long start = stack.index();
+                int level = stack.depth();
+                if(start>=data.size()||!data.getBit(start)){
+                    leaf = false;
+                    return;
+                }
+                if(stack.size()==1){
+                    leaf = true;
+                    return;
+                }
+                inside[level] = stack.isInside(region.yPos,region.xPos,region.height,region.width);
+                if(inside[level]){
+                    enter(level,0,start+1);
+                }else{
+                    expanded[level] = true;
+                    visited[level] = -1;
+                    Arrays.fill(memo,level*5,level*5+5,-1);
+                    int quadrant = nextIntersecting(level,-1);
+                    enter(level,quadrant,childStart(level,quadrant));
+                }
+            }
+        }
+
+        private void enter(int level, int quadrant, long start){
+            if(stack.depth()==level){
+                stack.pushChild(quadrant);
+            }else{
+                stack.toSibling(quadrant);
+            }
+            stack.setIndex(start);
+            visited[level] = quadrant;
+            expanded[level+1] = false;
+            entries[level+1] = entries[level]!=-1&&!inside[level]?matrix.index.childEntry(entries[level],quadrant):-1;
+        }
+
+        private boolean toNextFrame(){
+            long end = stack.index()+(leaf?1+matrix.header.bitsPerData:1);
+            while(stack.depth()>0){
+                int level = stack.depth()-1, quadrant = stack.quadrant();
+                if(inside[level]){
+                    if(stack.nextSibling()){
+                        stack.setIndex(end);
+                        return true;
                     }
+                    stack.pop();
+                    continue;
+                }
+                if(end!=-1){
+                    memo[level*5+nextExisting(level,quadrant)] = end;
+                }
+                int next = nextIntersecting(level,quadrant);
+                if(next!=-1){
+                    enter(level,next,childStart(level,next));
+                    return true;
+                }
+                stack.pop();
+                end = memo[level*5+4];
+            }
+            stack.pop();
+            return false;
+        }
+
+        private long childStart(int level, int quadrant){
+            int slot = level*5+quadrant;
+            if(memo[slot]==-1){
+                long offset = quadrant==0?1:quadrant<4?lookup(level,quadrant):-1;
+                if(offset!=-1){
+                    memo[slot] = stack.index(level)+offset;
                 }else{
-                    index++;
-                    if(current.size()==1){
-                        V datum = data.getBits(index,matrix.header.bitsPerData,matrix.bitDecoder);
-                        index+=matrix.header.bitsPerData;
-                        Quadrant prev = current;
-                        current = current.getNext();
-                        if(readFrame.contains(prev)){
-                            readCount++;
-                            return new DataPoint<>(datum,prev.yPos,prev.xPos);
-                        }
-                    }else{
-                        current = current.getNext();
+                    int previous = quadrant-1;
+                    while(!stack.hasChild(level,previous)){
+                        previous--;
+                    }
+                    memo[slot] = childEnd(level,previous);
+                    if(quadrant<4&&matrix.index==null){
+                        matrix.putIntoCache(stack.childHash(level,quadrant),memo[slot]-stack.index(level));
+                    }
+                }
+            }
+            return memo[slot];
+        }
+
+        private long childEnd(int level, int quadrant){
+            if(visited[level]==quadrant&&expanded[level+1]){
+                return childStart(level+1,4);
+            }
+            return matrix.skipFrame(childStart(level,quadrant),childHeight(level,quadrant),childWidth(level,quadrant));
+        }
+
+        private long lookup(int level, int quadrant){
+            if(entries[level]!=-1){
+                return matrix.index.childOffset(entries[level],quadrant);
+            }
+            if(matrix.index==null){
+                return matrix.cachedIndex(stack.childHash(level,quadrant));
+            }
+            return -1;
+        }
+
+        private int nextExisting(int level, int quadrant){
+            int next = quadrant+1;
+            while(next<4&&!stack.hasChild(level,next)){
+                next++;
+            }
+            return next;
+        }
+
+        private int nextIntersecting(int level, int quadrant){
+            for(int next = quadrant+1; next<4; next++){
+                if(stack.hasChild(level,next)&&region.intersects(childY(level,next),childX(level,next),childHeight(level,next),childWidth(level,next))){
+                    return next;
+                }
+            }
+            return -1;
+        }
+
+        private int childY(int level, int quadrant){
+            return (quadrant&2)==0?stack.y(level):stack.y(level)+Math.max(1,stack.height(level)/2);
+        }
+
+        private int childX(int level, int quadrant){
+            return (quadrant&1)==0?stack.x(level):stack.x(level)+Math.max(1,stack.width(level)/2);
+        }
+
+        private int childHeight(int level, int quadrant){
+            int nHeight = Math.max(1,stack.height(level)/2);
+            return (quadrant&2)==0?nHeight:stack.height(level)-nHeight;
+        }
+
+        private int childWidth(int level, int quadrant){
+            int nWidth = Math.max(1,stack.width(level)/2);
+            return (quadrant&1)==0?nWidth:stack.width(level)-nWidth;
+        }
+    }
+
+    private static class LineIterator<V> implements Iterator<DataPoint<V>>{
+
+        private static final int defaultFrame = 0, leafFrame = 1, innerFrame = 2;
+        private final QuadrantTreeMatrix<V> matrix;
+        private final boolean byColumn;
+        private final int lineEnd, minorStart, minorEnd, root;
+        private int[] ys, xs, heights, widths, kinds, halves, kids, free;
+        private long[] starts, childStarts, childEnds, segmentData;
+        private int[] segmentStarts, segmentLengths;
+        private int nodes, freeCount, line, segments, segment, offset;
+
+        private LineIterator(QuadrantTreeMatrix<V> matrix, Quadrant readFrame, boolean byColumn){
+            if(matrix==null||readFrame==null||!new Quadrant(0,0, matrix.height(), matrix.width()).contains(readFrame)){
+                throw new IllegalArgumentException("Illegal Arguments");
+            }
+            this.matrix = matrix;
+            this.byColumn = byColumn;
+            line = byColumn?readFrame.xPos:readFrame.yPos;
+            lineEnd = byColumn?readFrame.xPos+readFrame.width:readFrame.yPos+readFrame.height;
+            minorStart = byColumn?readFrame.yPos:readFrame.xPos;
+            minorEnd = byColumn?readFrame.yPos+readFrame.height:readFrame.xPos+readFrame.width;
+            int capacity = 2*FrameStack.maxDepth(matrix.height(),matrix.width())+8;
+            ys = new int[capacity];
+            xs = new int[capacity];
+            heights = new int[capacity];
+            widths = new int[capacity];
+            kinds = new int[capacity];
+            starts = new long[capacity];
+            halves = new int[capacity];
+            kids = new int[capacity*2];
+            childStarts = new long[capacity*4];
+            childEnds = new long[capacity*4];
+            free = new int[capacity];
+            segmentStarts = new int[16];
+            segmentLengths = new int[16];
+            segmentData = new long[16];
+            root = createNode(matrix.header.headerSize,0,0,matrix.height(),matrix.width());
+            planLine();
+        }
+
+        private int createNode(long start, int y, int x, int h, int w){
+            int node = freeCount>0?free[--freeCount]:nodes++;
+            if(node==ys.length){
+                int capacity = ys.length*2;
+                ys = Arrays.copyOf(ys,capacity);
+                xs = Arrays.copyOf(xs,capacity);
+                heights = Arrays.copyOf(heights,capacity);
+                widths = Arrays.copyOf(widths,capacity);
+                kinds = Arrays.copyOf(kinds,capacity);
+                starts = Arrays.copyOf(starts,capacity);
+                halves = Arrays.copyOf(halves,capacity);
+                kids = Arrays.copyOf(kids,capacity*2);
+                childStarts = Arrays.copyOf(childStarts,capacity*4);
+                childEnds = Arrays.copyOf(childEnds,capacity*4);
+                free = Arrays.copyOf(free,capacity);
+            }
+            ys[node] = y;
+            xs[node] = x;
+            heights[node] = h;
+            widths[node] = w;
+            starts[node] = start;
+            halves[node] = -1;
+            MemoryController data = matrix.encodedMatrix;
+            if(start>=data.size()||!data.getBit(start)){
+                kinds[node] = defaultFrame;
+            }else if(h==1&&w==1){
+                kinds[node] = leafFrame;
+            }else{
+                kinds[node] = innerFrame;
+                Arrays.fill(kids,node*2,node*2+2,-1);
+                Arrays.fill(childStarts,node*4,node*4+4,-1);
+                Arrays.fill(childEnds,node*4,node*4+4,-1);
+            }
+            return node;
+        }
+
+        private int splitHeight(int node){
+            return Math.max(1,heights[node]/2);
+        }
+
+        private int splitWidth(int node){
+            return Math.max(1,widths[node]/2);
+        }
+
+        private boolean hasChild(int node, int quadrant){
+            return ((quadrant&2)==0||heights[node]>splitHeight(node))&&((quadrant&1)==0||widths[node]>splitWidth(node));
+        }
+
+        private int childY(int node, int quadrant){
+            return (quadrant&2)==0?ys[node]:ys[node]+splitHeight(node);
+        }
+
+        private int childX(int node, int quadrant){
+            return (quadrant&1)==0?xs[node]:xs[node]+splitWidth(node);
+        }
+
+        private int childHeight(int node, int quadrant){
+            return (quadrant&2)==0?splitHeight(node):heights[node]-splitHeight(node);
+        }
+
+        private int childWidth(int node, int quadrant){
+            return (quadrant&1)==0?splitWidth(node):widths[node]-splitWidth(node);
+        }
+
+        private int quadrant(int half, int position){
+            return byColumn?position*2+half:half*2+position;
+        }
+
+        private long childStart(int node, int quadrant){
+            int index = node*4+quadrant;
+            if(childStarts[index]==-1){
+                int previous = quadrant-1;
+                while(previous>=0&&!hasChild(node,previous)){
+                    previous--;
+                }
+                childStarts[index] = previous<0?starts[node]+1:childEnd(node,previous);
+            }
+            return childStarts[index];
+        }
+
+        private long childEnd(int node, int quadrant){
+            int index = node*4+quadrant;
+            if(childEnds[index]==-1){
+                childEnds[index] = matrix.skipFrame(childStart(node,quadrant),childHeight(node,quadrant),childWidth(node,quadrant));
+            }
+            return childEnds[index];
+        }
+
+        private long finish(int node){
+            long end;
+            if(kinds[node]==defaultFrame){
+                end = starts[node]+1;
+            }else if(kinds[node]==leafFrame){
+                end = starts[node]+1+matrix.header.bitsPerData;
+            }else{
+                releaseKids(node);
+                int last = 3;
+                while(!hasChild(node,last)){
+                    last--;
+                }
+                end = childEnd(node,last);
+            }
+            free[freeCount++] = node;
+            return end;
+        }
+
+        private void releaseKids(int node){
+            for(int position = 0; position<2; position++){
+                int kid = kids[node*2+position];
+                if(kid!=-1){
+                    childEnds[node*4+quadrant(halves[node],position)] = finish(kid);
+                    kids[node*2+position] = -1;
+                }
+            }
+        }
+
+        private void toHalf(int node, int half){
+            releaseKids(node);
+            halves[node] = half;
+            for(int position = 0; position<2; position++){
+                int quadrant = quadrant(half,position);
+                if(!hasChild(node,quadrant)){
+                    continue;
+                }
+                int y = childY(node,quadrant), x = childX(node,quadrant);
+                int h = childHeight(node,quadrant), w = childWidth(node,quadrant);
+                int low = byColumn?y:x, high = byColumn?y+h:x+w;
+                if(high>minorStart&&low<minorEnd){
+                    int kid = createNode(childStart(node,quadrant),y,x,h,w);
+                    kids[node*2+position] = kid;
+                }
+            }
+        }
+
+        private void addSegment(int start, int length, long dataIndex){
+            if(segments==segmentStarts.length){
+                segmentStarts = Arrays.copyOf(segmentStarts,segments*2);
+                segmentLengths = Arrays.copyOf(segmentLengths,segments*2);
+                segmentData = Arrays.copyOf(segmentData,segments*2);
+            }
+            segmentStarts[segments] = start;
+            segmentLengths[segments] = length;
+            segmentData[segments++] = dataIndex;
+        }
+
+        private void plan(int node){
+            if(kinds[node]==defaultFrame){
+                int low = byColumn?ys[node]:xs[node], high = low+(byColumn?heights[node]:widths[node]);
+                low = Math.max(low,minorStart);
+                high = Math.min(high,minorEnd);
+                addSegment(low,high-low,-1);
+            }else if(kinds[node]==leafFrame){
+                addSegment(byColumn?ys[node]:xs[node],1,starts[node]+1);
+            }else{
+                int split = byColumn?xs[node]+splitWidth(node):ys[node]+splitHeight(node);
+                int half = line>=split?1:0;
+                if(halves[node]!=half){
+                    toHalf(node,half);
+                }
+                for(int position = 0; position<2; position++){
+                    int kid = kids[node*2+position];
+                    if(kid!=-1){
+                        plan(kid);
                     }
                 }
             }
         }
+
+        private void planLine(){
+            segments = 0;
+            segment = 0;
+            offset = 0;
+            plan(root);
+        }
+
+        public boolean hasNext(){
+            return line<lineEnd;
+        }
+
+        public DataPoint<V> next(){
+            if(!hasNext()){
+                throw new NoSuchElementException("Iterator has no more elements");
+            }
+            int minor = segmentStarts[segment]+offset;
+            long dataIndex = segmentData[segment];
+            V datum = matrix.header.defaultItem;
+            if(dataIndex!=-1){
+                datum = matrix.encodedMatrix.getBits(dataIndex,matrix.header.bitsPerData,matrix.bitDecoder);
+            }
+            DataPoint<V> point = byColumn?new DataPoint<>(datum,minor,line):new DataPoint<>(datum,line,minor);
+            if(++offset==segmentLengths[segment]){
+                offset = 0;
+                if(++segment==segments&&++line<lineEnd){
+                    planLine();
+                }
+            }
+            return point;
+        }
+    }
+
+    public static class TreeCursor{
+
+        private final QuadrantTreeMatrix<?> matrix;
+        private final RegionWalker walker;
+        private long readCount, pending;
+        private int row, column;
+        private long dataIndex;
+        private int defaultRow, defaultColumn, left, right;
+        private final Quadrant readFrame;
+
+        TreeCursor(QuadrantTreeMatrix<?> matrix, Quadrant readFrame){
+            if(matrix==null||readFrame==null||!new Quadrant(0,0, matrix.height(), matrix.width()).contains(readFrame)){
+                throw new IllegalArgumentException("Illegal Arguments");
+            }
+            this.matrix = matrix;
+            this.readFrame = readFrame;
+            walker = new RegionWalker(matrix,readFrame);
+            dataIndex = -1;
+        }
+
+        public boolean hasNext(){
+            return readCount<readFrame.size();
+        }
+
+        public boolean next(){
+            if(!hasNext()){
+                return false;
+            }
+            if(pending==0){
+                walker.next();
+                if(!walker.isDefault()){
+                    readCount++;
+                    row = walker.y();
+                    column = walker.x();
+                    dataIndex = walker.dataIndex();
+                    return true;
+                }
+                int top = Math.max(walker.y(),readFrame.yPos), bottom = Math.min(walker.y()+walker.height(),readFrame.yPos+readFrame.height);
+                left = Math.max(walker.x(),readFrame.xPos);
+                right = Math.min(walker.x()+walker.width(),readFrame.xPos+readFrame.width);
+                pending = (long)(bottom-top)*(right-left);
+                defaultRow = top;
+                defaultColumn = left;
+            }
+            readCount++;
+            pending--;
+            row = defaultRow;
+            column = defaultColumn;
+            dataIndex = -1;
+            if(++defaultColumn==right){
+                defaultColumn = left;
+                defaultRow++;
+            }
+            return true;
+        }
+
+        public int row(){
+            return row;
+        }
+
+        public int column(){
+            return column;
+        }
+
+        public boolean isDefault(){
+            return dataIndex==-1;
+        }
+
+        public long bits(){
+            if(dataIndex==-1){
+                return matrix.header.defaultBits;
+            }
+            return matrix.encodedMatrix.getBitsAsLong(dataIndex,matrix.header.bitsPerData);
+        }
     }
 }
\ No newline at end of file
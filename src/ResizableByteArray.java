@@ -0,0 +1,4 @@
+public interface ResizableByteArray extends ByteArray {
+
+    void resize(long newSize);
+}
\ No newline at end of file
@@ -0,0 +1,290 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+public class SelfCheck {
+
+    private static final BiFunction<Byte,Integer,byte[]> encoder = BitEncoders.byteEncoder;
+    private static final BiFunction<byte[],Integer,Byte> decoder = BitEncoders.byteDecoder;
+    private static int failures;
+
+    public static void main(String[] args){
+        run("LRU cache grows lazily up to huge capacities",()->lazyCache(new LongLongLruMap(Integer.MAX_VALUE)));
+        run("TinyLFU cache grows lazily up to huge capacities",()->lazyCache(new TinyLfuCache(Integer.MAX_VALUE)));
+        run("QTE 1x1 set and unset",SelfCheck::singleCell);
+        run("QTE small shapes set and unset",SelfCheck::smallShapes);
+        run("QTE 65536x65536 with a cache",SelfCheck::largeCached);
+        run("QTE sets stay local on a 10^7-cell matrix",SelfCheck::localSets);
+        run("Benchmark schemes agree with the raw matrix",SelfCheck::benchmarkSchemes);
+        run("Tiled 1x1 corner tile set and unset",SelfCheck::tiledCornerCell);
+        run("Tiled sizes not divisible by the tile size",SelfCheck::tiledShapes);
+        run("Tiled save and reopen after a growing flush",SelfCheck::tiledGrowingFlush);
+        run("Tiled concurrent sets with eviction",SelfCheck::tiledConcurrentSets);
+        if(failures>0){
+            System.out.println(failures+" check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    private static void run(String name, Runnable check){
+        try{
+            check.run();
+            System.out.println("ok   "+name);
+        }catch(RuntimeException e){
+            failures++;
+            System.out.println("FAIL "+name+": "+e);
+        }
+    }
+
+    private static void expect(boolean condition, String message){
+        if(!condition){
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static Byte[][] filled(int height, int width, byte value){
+        Byte[][] matrix = new Byte[height][width];
+        for(int r = 0; r<height; r++){
+            for(int c = 0; c<width; c++){
+                matrix[r][c] = value;
+            }
+        }
+        return matrix;
+    }
+
+    private static void compare(Matrix<Byte> matrix, Byte[][] expected, String context){
+        for(int r = 0; r<expected.length; r++){
+            for(int c = 0; c<expected[r].length; c++){
+                expect(matrix.get(r,c).equals(expected[r][c]),context+": ("+r+","+c+") is "+matrix.get(r,c)+", expected "+expected[r][c]);
+            }
+        }
+    }
+
+    private static long usedMemory(){
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory()-runtime.freeMemory();
+    }
+
+    private static void lazyCache(LongCacheManager cache){
+        long before = usedMemory();
+        Random random = new Random(29);
+        HashMap<Long,Long> expected = new HashMap<>();
+        for(int i = 0; i<100000; i++){
+            long key = random.nextLong()>>>1, value = random.nextInt(Integer.MAX_VALUE);
+            cache.putLong(key,value);
+            expected.put(key,value);
+            if(i%3==0){
+                cache.removeLong(key);
+                expected.remove(key);
+            }
+        }
+        long used = usedMemory()-before;
+        expect(cache.keySet().size()==expected.size(),"holds "+cache.keySet().size()+" entries, expected "+expected.size());
+        for(Long key : expected.keySet()){
+            expect(cache.getLongNoCache(key)==expected.get(key),"lost key "+key);
+        }
+        expect(used<(64<<20),"holding "+expected.size()+" entries took "+(used>>20)+" MB");
+    }
+
+    private static void singleCell(){
+        for(double cachePercent : new double[]{0,.5}){
+            QuadrantTreeMatrix<Byte> matrix = new QuadrantTreeMatrix<>(filled(1,1,(byte)0),8,encoder,decoder,cachePercent);
+            matrix.set(0,0,(byte)7);
+            expect(matrix.get(0,0)==7,"set non-default");
+            matrix.set(0,0,(byte)0);
+            expect(matrix.get(0,0)==0,"set back to default");
+            matrix.set(0,0,(byte)3);
+            expect(matrix.get(0,0)==3,"set again");
+        }
+    }
+
+    private static void smallShapes(){
+        Random random = new Random(11);
+        for(int height = 1; height<=5; height++){
+            for(int width = 1; width<=5; width++){
+                Byte[][] expected = filled(height,width,(byte)0);
+                QuadrantTreeMatrix<Byte> matrix = new QuadrantTreeMatrix<>(filled(height,width,(byte)0),8,encoder,decoder,.5);
+                for(int i = 0; i<200; i++){
+                    int r = random.nextInt(height), c = random.nextInt(width);
+                    byte value = (byte)(random.nextBoolean()?0:random.nextInt(4));
+                    matrix.set(r,c,value);
+                    expected[r][c] = value;
+                }
+                compare(matrix,expected,height+"x"+width);
+            }
+        }
+    }
+
+    private static File tempFile(){
+        try{
+            File file = File.createTempFile("selfcheck",".qtm");
+            file.deleteOnExit();
+            new File(file.getPath()+".tmp").deleteOnExit();
+            return file;
+        }catch(IOException e){
+            throw new RuntimeException("Could not create temporary file");
+        }
+    }
+
+    private static void tiledCornerCell(){
+        TiledMatrix<Byte> small = new TiledMatrix<>(5,5,8,(byte)0,encoder,decoder,.5,4,TiledMatrix.defaultResidentTiles,null);
+        TiledMatrix<Byte> large = new TiledMatrix<>(4097,4097,8,(byte)0,encoder,decoder,.5);
+        for(TiledMatrix<Byte> matrix : List.of(small,large)){
+            int last = matrix.height()-1;
+            matrix.set(last,last,(byte)7);
+            expect(matrix.get(last,last)==7,"set non-default");
+            matrix.set(last,last,(byte)0);
+            expect(matrix.get(last,last)==0,"set back to default");
+        }
+    }
+
+    private static void tiledShapes(){
+        Random random = new Random(13);
+        for(int tileSize = 1; tileSize<=4; tileSize++){
+            Byte[][] expected = filled(7,5,(byte)0);
+            TiledMatrix<Byte> matrix = new TiledMatrix<>(7,5,8,(byte)0,encoder,decoder,.5,tileSize,TiledMatrix.defaultResidentTiles,null);
+            for(int i = 0; i<200; i++){
+                int r = random.nextInt(7), c = random.nextInt(5);
+                byte value = (byte)(random.nextBoolean()?0:random.nextInt(4));
+                matrix.set(r,c,value);
+                expected[r][c] = value;
+            }
+            compare(matrix,expected,"tile size "+tileSize);
+            compare(new TiledMatrix<>(expected,8,encoder,decoder,.5,tileSize,null),expected,"encoded with tile size "+tileSize);
+        }
+    }
+
+    private static void tiledGrowingFlush(){
+        File first = tempFile(), second = tempFile();
+        Byte[][] expected = filled(12,12,(byte)0);
+        expected[0][0] = 1;
+        new TiledMatrix<>(expected,8,encoder,decoder,.5,4,null).save(first);
+        TiledMatrix<Byte> matrix = TiledMatrix.open(first,encoder,decoder,.5,1,null);
+        Random random = new Random(17);
+        for(int r = 8; r<12; r++){
+            for(int c = 8; c<12; c++){
+                expected[r][c] = (byte)(1+random.nextInt(100));
+                matrix.set(r,c,expected[r][c]);
+            }
+        }
+        matrix.flush();
+        expect(matrix.get(0,0)==1,"reload first tile");
+        matrix.save(second);
+        compare(TiledMatrix.open(second,encoder,decoder),expected,"reopened");
+        long length = second.length();
+        TiledMatrix.open(second,encoder,decoder).save(first);
+        expect(first.length()==length,"saved "+length+" bytes, compacted copy has "+first.length());
+    }
+
+    private static void tiledConcurrentSets(){
+        File file = tempFile();
+        int threads = 4, size = 16;
+        Byte[][] expected = filled(size*threads,size,(byte)0);
+        new TiledMatrix<>(expected,8,encoder,decoder,.5,4,null).save(file);
+        TiledMatrix<Byte> matrix = TiledMatrix.open(file,encoder,decoder,.5,2,null);
+        IntStream.range(0,threads).parallel().forEach(t -> {
+            Random random = new Random(t);
+            for(int i = 0; i<2000; i++){
+                int r = t*size+random.nextInt(size), c = random.nextInt(size);
+                byte value = (byte)random.nextInt(4);
+                matrix.set(r,c,value);
+                expected[r][c] = value;
+            }
+        });
+        matrix.flush();
+        compare(TiledMatrix.open(file,encoder,decoder),expected,"reopened");
+    }
+
+    private static void largeCached(){
+        int dim = 65536;
+        QuadrantTreeBuilder<Byte> builder = new QuadrantTreeBuilder<>(dim,dim,8,(byte)0,encoder);
+        builder.add(dim/3,dim/5,(byte)5);
+        MemoryController encoded = builder.build(new MemoryController(QuadrantTreeMatrix.defaultStorage));
+        for(boolean concurrent : new boolean[]{false,true}){
+            long before = usedMemory();
+            QuadrantTreeMatrix<Byte> matrix = new QuadrantTreeMatrix<>(encoded,encoder,decoder,.6,concurrent);
+            long used = usedMemory()-before;
+            expect(matrix.get(dim/3,dim/5)==5&&matrix.get(dim-1,dim-1)==0,"read back the stored entry");
+            matrix.set(dim-1,dim-1,(byte)9);
+            matrix.set(dim/3,dim/5,(byte)0);
+            expect(matrix.get(dim-1,dim-1)==9&&matrix.get(dim/3,dim/5)==0,"set and unset");
+            expect(used<(64<<20),"an almost empty matrix took "+(used>>20)+" MB");
+            matrix.set(dim/3,dim/5,(byte)5);
+            matrix.set(dim-1,dim-1,(byte)0);
+        }
+    }
+
+    private static void localSets(){
+        int dim = 3163, sets = 5000;
+        Random random = new Random(23);
+        Byte[][] expected = filled(dim,dim,(byte)0);
+        for(Byte[] row : expected){
+            for(int c = 0; c<dim; c++){
+                row[c] = (byte)(random.nextDouble()<.3?random.nextInt(100):0);
+            }
+        }
+        QuadrantTreeMatrix<Byte> matrix = new QuadrantTreeMatrix<>(expected,8,encoder,decoder,.1);
+        int[] rows = new int[sets], columns = new int[sets];
+        for(int i = 0; i<sets; i++){
+            rows[i] = random.nextInt(dim);
+            columns[i] = random.nextInt(dim);
+        }
+        long reads = System.nanoTime();
+        for(int i = 0; i<sets; i++){
+            matrix.get(rows[i],columns[i]);
+        }
+        reads = System.nanoTime()-reads;
+        long writes = System.nanoTime();
+        for(int i = 0; i<sets; i++){
+            expected[rows[i]][columns[i]] = (byte)(random.nextBoolean()?0:random.nextInt(100));
+            matrix.set(rows[i],columns[i],expected[rows[i]][columns[i]]);
+        }
+        writes = System.nanoTime()-writes;
+        for(int i = 0; i<sets; i++){
+            expect(matrix.get(rows[i],columns[i]).equals(expected[rows[i]][columns[i]]),"("+rows[i]+","+columns[i]+") is "+matrix.get(rows[i],columns[i])+", expected "+expected[rows[i]][columns[i]]);
+        }
+        expect(writes<2*reads,sets+" sets took "+writes/1000000+" ms against "+reads/1000000+" ms for the same reads, so they are shifting the whole stream");
+    }
+
+    private static void benchmarkSchemes(){
+        Random random = new Random(19);
+        for(int[] shape : new int[][]{{1,1},{7,5},{33,64}}){
+            int height = shape[0], width = shape[1];
+            Byte[][] expected = Main.generateMatrix(height,width,.3);
+            double[] x = new double[width], reference = new double[height];
+            for(int c = 0; c<width; c++){
+                x[c] = random.nextDouble();
+            }
+            long nonDefault = 0;
+            for(int r = 0; r<height; r++){
+                for(int c = 0; c<width; c++){
+                    reference[r]+=expected[r][c]*x[c];
+                    nonDefault+=expected[r][c]!=0?1:0;
+                }
+            }
+            for(int type = 1; type<=Main.schemes.length; type++){
+                String context = Main.schemes[type-1]+" "+height+"x"+width;
+                Matrix<Byte> matrix = Main.getByteMatrix(expected,.5,type,false);
+                compare(matrix,expected,context);
+                long count = 0;
+                for(Iterator<DataPoint<Byte>> iterator = matrix.iterator(IteratorType.NON_DEFAULT); iterator.hasNext(); count++){
+                    DataPoint<Byte> point = iterator.next();
+                    expect(point.data.equals(expected[point.row][point.column]),context+": iterated "+point);
+                }
+                expect(count==nonDefault,context+": iterated "+count+" entries, expected "+nonDefault);
+                double[] y = new double[height];
+                matrix.multiplyParallel(x,y,(bits)->(byte)bits);
+                for(int r = 0; r<height; r++){
+                    expect(Math.abs(y[r]-reference[r])<1e-9,context+": product row "+r+" is "+y[r]+", expected "+reference[r]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.File;
+
+public class ShortQuadrantTreeMatrix extends QuadrantTreeMatrix<Short>{
+
+    public ShortQuadrantTreeMatrix(MemoryController encodedMatrix, double cachePercent){
+        super(encodedMatrix,BitEncoders.shortEncoder,BitEncoders.shortDecoder,cachePercent);
+    }
+
+    public ShortQuadrantTreeMatrix(short[][] matrix, int bitsPerData, double cachePercent){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix,bitsPerData).encodeMatrix(new MemoryController(defaultStorage)),cachePercent);
+    }
+
+    public ShortQuadrantTreeMatrix(short[][] matrix, int bitsPerData, double cachePercent, File source){
+        this(PrimitiveQuadrantTreeEncoder.of(matrix,bitsPerData).encodeMatrix(new MemoryController(source)),cachePercent);
+    }
+
+    public short getShort(int r, int c){
+        return (short)getRaw(r,c);
+    }
+
+    public short setShort(int r, int c, short value){
+        setRaw(r,c,value);
+        return value;
+    }
+
+    public ShortCursor cursor(){
+        return cursor(0,0,height(),width());
+    }
+
+    public ShortCursor cursor(int r, int c, int h, int w){
+        return new ShortCursor(this,new Quadrant(r,c,h,w));
+    }
+
+    public static class ShortCursor extends TreeCursor{
+
+        private ShortCursor(ShortQuadrantTreeMatrix matrix, Quadrant readFrame){
+            super(matrix,readFrame);
+        }
+
+        public short value(){
+            return (short)bits();
+        }
+    }
+}
@@ -6,14 +6,16 @@ public class StandardHeader<E>{
 
     public final E defaultItem;
 
+    public final long defaultBits;
+
     public StandardHeader(MemoryController controller, BiFunction<byte[],Integer,E> bitDecoder){
-        BiFunction<byte[],Integer,Integer> intDecoder = BitEncoders.intDecoder;
-        bitsPerData = controller.getBits(0,8,intDecoder);
+        bitsPerData = (int)controller.getBitsAsLong(0,8);
         defaultItem = controller.getBits(8,bitsPerData,bitDecoder);
-        bitsPerHeight = controller.getBits(8+bitsPerData,5,intDecoder)+1;
-        height = controller.getBits(8+bitsPerData+5,bitsPerHeight,intDecoder);
-        bitsPerWidth = controller.getBits(8+bitsPerData+5+bitsPerHeight,5,intDecoder)+1;
-        width = controller.getBits(8+bitsPerData+5+bitsPerHeight+5,bitsPerWidth,intDecoder);
+        defaultBits = bitsPerData<=64?controller.getBitsAsLong(8,bitsPerData):0;
+        bitsPerHeight = (int)controller.getBitsAsLong(8+bitsPerData,5)+1;
+        height = (int)controller.getBitsAsLong(8+bitsPerData+5,bitsPerHeight);
+        bitsPerWidth = (int)controller.getBitsAsLong(8+bitsPerData+5+bitsPerHeight,5)+1;
+        width = (int)controller.getBitsAsLong(8+bitsPerData+5+bitsPerHeight+5,bitsPerWidth);
         headerSize = 8+bitsPerData+5+bitsPerHeight+5+bitsPerWidth;
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,7 @@
+enum StorageType{
+    MEMORY,
+    CHUNKED,
+    RANDOM_ACCESS,
+    MAPPED,
+    PAGED
+}
\ No newline at end of file
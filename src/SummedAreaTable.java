@@ -0,0 +1,98 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class SummedAreaTable {
+
+    public interface CellTest{
+        boolean test(int r, int c);
+    }
+
+    private static final int parallelCutoff = 1<<16;
+    private final int height, width, stride;
+    private final int[] sums;
+
+    public SummedAreaTable(int height, int width, CellTest test){
+        this(height,width,test,null);
+    }
+
+    public SummedAreaTable(int height, int width, CellTest test, ForkJoinPool pool){
+        if(height<0||width<0||(long)(height+1)*(width+1)>Integer.MAX_VALUE-8){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        this.height = height;
+        this.width = width;
+        stride = width+1;
+        sums = new int[(height+1)*stride];
+        if(pool==null){
+            for(int r = 1; r<=height; r++){
+                int row = r*stride, above = row-stride, rowSum = 0;
+                for(int c = 1; c<=width; c++){
+                    if(test.test(r-1,c-1)){
+                        rowSum++;
+                    }
+                    sums[row+c] = sums[above+c]+rowSum;
+                }
+            }
+        }else{
+            pool.invoke(new Pass(test,1,height+1,true));
+            pool.invoke(new Pass(test,1,width+1,false));
+        }
+    }
+
+    public int height(){
+        return height;
+    }
+
+    public int width(){
+        return width;
+    }
+
+    public int count(int y, int x, int h, int w){
+        int top = y*stride, bottom = (y+h)*stride;
+        return sums[bottom+x+w]-sums[top+x+w]-sums[bottom+x]+sums[top+x];
+    }
+
+    public int count(Quadrant frame){
+        return count(frame.yPos,frame.xPos,frame.height,frame.width);
+    }
+
+    public int total(){
+        return sums[sums.length-1];
+    }
+
+    private class Pass extends RecursiveAction{
+
+        private static final long serialVersionUID = 1L;
+        private final CellTest test;
+        private final int start, end;
+        private final boolean rows;
+
+        private Pass(CellTest test, int start, int end, boolean rows){
+            this.test = test;
+            this.start = start;
+            this.end = end;
+            this.rows = rows;
+        }
+
+        protected void compute(){
+            if(end-start>1&&(long)(end-start)*(rows?width:height)>parallelCutoff){
+                int mid = (start+end)>>>1;
+                invokeAll(new Pass(test,start,mid,rows),new Pass(test,mid,end,rows));
+            }else if(rows){
+                for(int r = start; r<end; r++){
+                    int row = r*stride;
+                    for(int c = 1; c<=width; c++){
+                        sums[row+c] = sums[row+c-1]+(test.test(r-1,c-1)?1:0);
+                    }
+                }
+            }else{
+                for(int r = 2; r<=height; r++){
+                    int row = r*stride, above = row-stride;
+                    for(int c = start; c<end; c++){
+                        sums[row+c]+=sums[above+c];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,767 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiFunction;
+import java.util.function.LongToDoubleFunction;
+
+public class TiledMatrix<E> extends Matrix<E>{
+
+    public static final int magic = 0x51544d54, version = 1, headerBytes = 24, entryBytes = 16;
+    public static final int defaultTileSize = 4096, defaultResidentTiles = 16;
+    private final int height, width, tileSize, tileRows, tileColumns, bitsPerData, maxResident;
+    private E defaultItem;
+    private long defaultBits;
+    public final BiFunction<E,Integer,byte[]> bitEncoder;
+    public final BiFunction<byte[],Integer,E> bitDecoder;
+    public final double cachePercent;
+    private final ForkJoinPool pool;
+    private final Tile<E>[] tiles;
+    private final LinkedHashMap<Integer,Tile<E>> resident;
+    private File source;
+
+    public TiledMatrix(int height, int width, int bitsPerData, E defaultItem, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent){
+        this(height,width,bitsPerData,defaultItem,bitEncoder,bitDecoder,cachePercent,defaultTileSize,Integer.MAX_VALUE,ForkJoinPool.commonPool());
+    }
+
+    public TiledMatrix(int height, int width, int bitsPerData, E defaultItem, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent, int tileSize, int maxResident, ForkJoinPool pool){
+        this(height,width,bitsPerData,bitEncoder,bitDecoder,cachePercent,tileSize,maxResident,pool);
+        if(defaultItem==null){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        setDefault(defaultItem);
+    }
+
+    private TiledMatrix(int height, int width, int bitsPerData, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent, int tileSize, int maxResident, ForkJoinPool pool){
+        if(height<=0||width<=0||bitsPerData<=0||bitsPerData>255||tileSize<=0||maxResident<=0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        this.height = height;
+        this.width = width;
+        this.bitsPerData = bitsPerData;
+        this.bitEncoder = bitEncoder;
+        this.bitDecoder = bitDecoder;
+        this.cachePercent = cachePercent;
+        this.tileSize = tileSize;
+        this.maxResident = maxResident;
+        this.pool = pool;
+        tileRows = Main.roundUpDiv(height,tileSize);
+        tileColumns = Main.roundUpDiv(width,tileSize);
+        @SuppressWarnings("unchecked") Tile<E>[] created = (Tile<E>[])new Tile<?>[Math.toIntExact((long)tileRows*tileColumns)];
+        tiles = created;
+        for(int i = 0; i<tiles.length; i++){
+            int row = i/tileColumns*tileSize, column = i%tileColumns*tileSize;
+            tiles[i] = new Tile<>(i,row,column,Math.min(tileSize,height-row),Math.min(tileSize,width-column));
+        }
+        resident = new LinkedHashMap<>(16,0.75f,true);
+    }
+
+    public TiledMatrix(E[][] matrix, int bitsPerData, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent){
+        this(matrix,bitsPerData,bitEncoder,bitDecoder,cachePercent,defaultTileSize,ForkJoinPool.commonPool());
+    }
+
+    public TiledMatrix(E[][] matrix, int bitsPerData, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent, int tileSize, ForkJoinPool pool){
+        this(matrix.length,matrix.length==0?0:matrix[0].length,bitsPerData,bitEncoder,bitDecoder,cachePercent,tileSize,Integer.MAX_VALUE,pool);
+        for(E[] row : matrix){
+            if(row==null||row.length!=width){
+                throw new IllegalArgumentException("Invalid parameters");
+            }
+        }
+        EncodeTask task = new EncodeTask(matrix,0,tiles.length);
+        if(pool==null){
+            task.encodeTiles();
+        }else{
+            pool.invoke(task);
+        }
+        HashMap<E,Long> areas = new HashMap<>();
+        E mostCommon = null;
+        long maxArea = 0;
+        for(Tile<E> tile : tiles){
+            long area = areas.merge(tile.defaultItem,(long)tile.height*tile.width,Long::sum);
+            if(area>maxArea){
+                maxArea = area;
+                mostCommon = tile.defaultItem;
+            }
+        }
+        setDefault(mostCommon);
+        for(Tile<E> tile : tiles){
+            if(tile.defaultItem.equals(defaultItem)&&!tile.stream.getBit(new StandardHeader<>(tile.stream,bitDecoder).headerSize)){
+                tile.stream = null;
+                tile.defaultItem = null;
+            }else{
+                tile.dirty = true;
+                resident.put(tile.index,tile);
+            }
+        }
+    }
+
+    private void setDefault(E defaultItem){
+        MemoryController defaultController = new MemoryController();
+        defaultController.setBits(0,bitsPerData,defaultItem,bitEncoder);
+        this.defaultItem = defaultItem;
+        defaultBits = bitsPerData<=64?defaultController.getBitsAsLong(0,bitsPerData):0;
+    }
+
+    public static <E> TiledMatrix<E> open(File file, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder){
+        return open(file,bitEncoder,bitDecoder,0.01,defaultResidentTiles,ForkJoinPool.commonPool());
+    }
+
+    public static <E> TiledMatrix<E> open(File file, BiFunction<E,Integer,byte[]> bitEncoder, BiFunction<byte[],Integer,E> bitDecoder, double cachePercent, int maxResident, ForkJoinPool pool){
+        try(FileChannel channel = FileChannel.open(file.toPath(),StandardOpenOption.READ)){
+            long length = channel.size();
+            if(length<headerBytes){
+                throw new IllegalArgumentException("Invalid tiled matrix "+file);
+            }
+            ByteBuffer header = read(channel,0,headerBytes);
+            if(header.getInt(0)!=magic){
+                throw new IllegalArgumentException("Invalid tiled matrix "+file);
+            }
+            int fileVersion = header.getShort(4);
+            if(fileVersion!=version){
+                throw new IllegalArgumentException("Unsupported tiled matrix version "+fileVersion);
+            }
+            int height = header.getInt(8), width = header.getInt(12), tileSize = header.getInt(16), bitsPerData = header.getInt(20);
+            if(height<=0||width<=0||tileSize<=0||bitsPerData<=0||bitsPerData>255){
+                throw new IllegalArgumentException("Invalid tiled matrix "+file);
+            }
+            int defaultBytes = Main.roundUpDiv(bitsPerData,8);
+            MemoryController defaultController = new MemoryController();
+            defaultController.setBits(0,bitsPerData,read(channel,headerBytes,defaultBytes).array());
+            TiledMatrix<E> matrix = new TiledMatrix<>(height,width,bitsPerData,defaultController.getBits(0,bitsPerData,bitDecoder),bitEncoder,bitDecoder,cachePercent,tileSize,maxResident,pool);
+            long directoryStart = matrix.directoryStart();
+            if(directoryStart+(long)matrix.tiles.length*entryBytes>length){
+                throw new IllegalArgumentException("Invalid tiled matrix "+file);
+            }
+            ByteBuffer directory = read(channel,directoryStart,matrix.tiles.length*entryBytes);
+            for(Tile<E> tile : matrix.tiles){
+                tile.offset = directory.getLong();
+                tile.bits = directory.getLong();
+                tile.capacity = Main.roundUpDiv(tile.bits,8);
+                if(tile.offset<0||tile.bits<0||tile.offset+tile.capacity>length){
+                    throw new IllegalArgumentException("Invalid tiled matrix "+file);
+                }
+            }
+            matrix.source = file;
+            return matrix;
+        }catch(IOException e){
+            throw new RuntimeException("Could not open "+file);
+        }
+    }
+
+    private long directoryStart(){
+        return headerBytes+Main.roundUpDiv(bitsPerData,8);
+    }
+
+    public synchronized void save(File file){
+        long offset = directoryStart()+(long)tiles.length*entryBytes;
+        long[] offsets = new long[tiles.length], bits = new long[tiles.length];
+        for(Tile<E> tile : tiles){
+            bits[tile.index] = tile.stream!=null?tile.stream.size():tile.bits;
+            if(tile.stream!=null||tile.offset!=0){
+                offsets[tile.index] = offset;
+                offset+=Main.roundUpDiv(bits[tile.index],8);
+            }
+        }
+        if(file.getParentFile()!=null){
+            file.getParentFile().mkdirs();
+        }
+        File temp = new File(file.getPath()+".tmp");
+        try(FileChannel output = FileChannel.open(temp.toPath(),StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.WRITE);
+            FileChannel input = source==null?null:FileChannel.open(source.toPath(),StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate((int)directoryStart());
+            header.putInt(magic);
+            header.putShort((short)version);
+            header.putShort((short)0);
+            header.putInt(height);
+            header.putInt(width);
+            header.putInt(tileSize);
+            header.putInt(bitsPerData);
+            MemoryController defaultController = new MemoryController();
+            defaultController.setBits(0,bitsPerData,defaultItem,bitEncoder);
+            header.put(defaultController.getBits(0,bitsPerData));
+            write(output,0,header.flip());
+            ByteBuffer directory = ByteBuffer.allocate(tiles.length*entryBytes);
+            for(Tile<E> tile : tiles){
+                directory.putLong(offsets[tile.index]);
+                directory.putLong(bits[tile.index]);
+            }
+            write(output,header.capacity(),directory.flip());
+            for(Tile<E> tile : tiles){
+                if(tile.stream!=null){
+                    write(output,offsets[tile.index],toBytes(tile.stream));
+                }else if(tile.offset!=0){
+                    long length = Main.roundUpDiv(tile.bits,8);
+                    for(long copied = 0; copied<length; ){
+                        copied+=input.transferTo(tile.offset+copied,length-copied,output.position(offsets[tile.index]+copied));
+                    }
+                }
+            }
+            output.force(true);
+        }catch(IOException e){
+            throw new RuntimeException("Could not write "+file);
+        }
+        try{
+            Files.move(temp.toPath(),file.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        }catch(IOException e){
+            throw new RuntimeException("Could not write "+file);
+        }
+        for(Tile<E> tile : tiles){
+            tile.offset = offsets[tile.index];
+            tile.bits = bits[tile.index];
+            tile.capacity = Main.roundUpDiv(bits[tile.index],8);
+            tile.dirty = false;
+        }
+        source = file;
+    }
+
+    public synchronized void flush(){
+        if(source==null){
+            throw new IllegalStateException("Matrix has no backing file");
+        }
+        try(FileChannel channel = FileChannel.open(source.toPath(),StandardOpenOption.READ,StandardOpenOption.WRITE)){
+            for(Tile<E> tile : tiles){
+                synchronized(tile){
+                    if(tile.dirty){
+                        writeTile(channel,tile);
+                    }
+                }
+            }
+            channel.force(true);
+        }catch(IOException e){
+            throw new RuntimeException("Could not write "+source);
+        }
+    }
+
+    private void writeTile(FileChannel channel, Tile<E> tile) throws IOException{
+        ByteBuffer bytes = toBytes(tile.stream);
+        long offset = tile.offset!=0&&bytes.remaining()<=tile.capacity?tile.offset:channel.size();
+        if(offset!=tile.offset){
+            tile.capacity = bytes.remaining()+bytes.remaining()/2;
+            write(channel,offset+tile.capacity-1,ByteBuffer.allocate(1));
+        }
+        write(channel,offset,bytes);
+        tile.offset = offset;
+        tile.bits = tile.stream.size();
+        ByteBuffer entry = ByteBuffer.allocate(entryBytes);
+        entry.putLong(tile.offset);
+        entry.putLong(tile.bits);
+        write(channel,directoryStart()+(long)tile.index*entryBytes,entry.flip());
+        tile.dirty = false;
+    }
+
+    private MemoryController stream(Tile<E> tile){
+        MemoryController stream = tile.stream;
+        if(stream!=null||tile.offset==0){
+            return stream;
+        }
+        try(FileChannel channel = FileChannel.open(source.toPath(),StandardOpenOption.READ)){
+            ByteBuffer bytes = read(channel,tile.offset,Math.toIntExact(Main.roundUpDiv(tile.bits,8)));
+            MemoryController controller = new MemoryController(QuadrantTreeMatrix.defaultStorage);
+            MemoryController.MemoryBitOutputStream writer = controller.outputStream();
+            long i = 0;
+            for(; i+64<=tile.bits; i+=64){
+                writer.writeBitsAsLong(64,bytes.getLong());
+            }
+            for(; i<tile.bits; i+=8){
+                int remaining = (int)Math.min(8,tile.bits-i);
+                writer.writeBitsAsLong(remaining,(bytes.get()&0xFF)>>>(8-remaining));
+            }
+            writer.close();
+            return controller;
+        }catch(IOException e){
+            throw new RuntimeException("Could not read "+source);
+        }
+    }
+
+    private QuadrantTreeMatrix<E> tile(Tile<E> tile, boolean create, boolean writable){
+        QuadrantTreeMatrix<E> matrix;
+        synchronized(tile){
+            matrix = load(tile,create,writable);
+        }
+        evict();
+        return matrix;
+    }
+
+    private QuadrantTreeMatrix<E> load(Tile<E> tile, boolean create, boolean writable){
+        QuadrantTreeMatrix<E> matrix = tile.matrix;
+        if(matrix==null||writable&&matrix.isReadOnly()){
+            MemoryController stream = matrix!=null?tile.stream:stream(tile);
+            if(stream==null){
+                if(!create){
+                    return null;
+                }
+                stream = new QuadrantTreeBuilder<>(tile.height,tile.width,bitsPerData,defaultItem,bitEncoder).build(new MemoryController(QuadrantTreeMatrix.defaultStorage));
+                tile.dirty = true;
+            }
+            matrix = writable?new QuadrantTreeMatrix<>(stream,bitEncoder,bitDecoder,cachePercent):QuadrantTreeMatrix.readOnly(stream,bitEncoder,bitDecoder);
+            tile.stream = stream;
+            tile.defaultItem = new StandardHeader<>(stream,bitDecoder).defaultItem;
+            tile.matrix = matrix;
+        }
+        synchronized(resident){
+            resident.put(tile.index,tile);
+        }
+        return matrix;
+    }
+
+    private void evict(){
+        // Without a backing file an evicted tile could not be reloaded, so everything stays resident until the first save
+        if(source==null){
+            return;
+        }
+        List<Tile<E>> evicted = new ArrayList<>();
+        synchronized(resident){
+            Iterator<Tile<E>> iterator = resident.values().iterator();
+            while(resident.size()>maxResident&&iterator.hasNext()){
+                evicted.add(iterator.next());
+                iterator.remove();
+            }
+        }
+        for(Tile<E> tile : evicted){
+            synchronized(this){
+                synchronized(tile){
+                    synchronized(resident){
+                        if(resident.containsKey(tile.index)){
+                            continue;
+                        }
+                    }
+                    if(tile.dirty){
+                        try(FileChannel channel = FileChannel.open(source.toPath(),StandardOpenOption.READ,StandardOpenOption.WRITE)){
+                            writeTile(channel,tile);
+                        }catch(IOException e){
+                            throw new RuntimeException("Could not write "+source);
+                        }
+                    }
+                    tile.stream = null;
+                    tile.matrix = null;
+                    tile.defaultItem = null;
+                }
+            }
+        }
+    }
+
+    public int residentTiles(){
+        synchronized(resident){
+            return resident.size();
+        }
+    }
+
+    public int tileSize(){
+        return tileSize;
+    }
+
+    public E defaultItem(){
+        return defaultItem;
+    }
+
+    public long estimateBitSize(){
+        long size = (long)tiles.length*entryBytes*8;
+        for(Tile<E> tile : tiles){
+            QuadrantTreeMatrix<E> matrix = tile.matrix;
+            MemoryController stream = tile.stream;
+            size+=matrix!=null?matrix.estimateBitSize():stream!=null?stream.size():tile.bits;
+        }
+        return size;
+    }
+
+    public void trim(){
+        for(Tile<E> tile : tiles){
+            QuadrantTreeMatrix<E> matrix = tile.matrix;
+            if(matrix!=null){
+                matrix.trim();
+            }
+        }
+    }
+
+    private Tile<E> tileAt(int r, int c){
+        return tiles[r/tileSize*tileColumns+c/tileSize];
+    }
+
+    public E get(int r, int c){
+        if(r<0||c<0||r>=height||c>=width){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        Tile<E> tile = tileAt(r,c);
+        QuadrantTreeMatrix<E> matrix = tile(tile,false,false);
+        return matrix==null?defaultItem:matrix.get(r-tile.row,c-tile.column);
+    }
+
+    public E set(int r, int c, E value){
+        if(value==null||r<0||c<0||r>=height||c>=width){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        Tile<E> tile = tileAt(r,c);
+        synchronized(tile){
+            QuadrantTreeMatrix<E> matrix = load(tile,!value.equals(defaultItem),true);
+            if(matrix==null){
+                return value;
+            }
+            matrix.set(r-tile.row,c-tile.column,value);
+            tile.dirty = true;
+        }
+        evict();
+        return value;
+    }
+
+    public int height(){
+        return height;
+    }
+
+    public int width(){
+        return width;
+    }
+
+    public E[][] toRawMatrix(){
+        @SuppressWarnings("unchecked") E[][] matrix = (E[][])new Object[height][width];
+        DecodeTask task = new DecodeTask(matrix,0,tiles.length);
+        if(pool==null){
+            task.decodeTiles();
+        }else{
+            pool.invoke(task);
+        }
+        return matrix;
+    }
+
+    public void visit(MatrixVisitor<E> visitor){
+        visitor.start(height,width);
+        for(Tile<E> tile : tiles){
+            MemoryController stream = stream(tile);
+            if(stream==null){
+                visitor.visitDefault(tile.row,tile.column,tile.height,tile.width,defaultItem);
+                continue;
+            }
+            QuadrantTreeEncoder.decode(stream,bitDecoder,new MatrixVisitor<>(){
+                public void visit(int r, int c, E value){
+                    visitor.visit(r+tile.row,c+tile.column,value);
+                }
+
+                public void visitDefault(int r, int c, int h, int w, E value){
+                    visitor.visitDefault(r+tile.row,c+tile.column,h,w,value);
+                }
+            });
+        }
+    }
+
+    public void multiply(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool){
+        if(x==null||y==null||values==null||x.length!=(transpose?height:width)||y.length!=(transpose?width:height)){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        if(bitsPerData>64){
+            throw new IllegalStateException("Data is too wide to multiply");
+        }
+        Arrays.fill(y,0);
+        ProductTask task = new ProductTask(x,y,values,values.applyAsDouble(defaultBits),transpose,0,transpose?tileColumns:tileRows);
+        if(pool==null){
+            task.multiplyBands();
+        }else{
+            pool.invoke(task);
+        }
+    }
+
+    public Iterator<DataPoint<E>> iterator(int r, int c, int h, int w, IteratorType type){
+        if(r<0||c<0||h<0||w<0||r+h>height||c+w>width||type==null){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        return new TileIterator<>(this,new Quadrant(r,c,h,w),type);
+    }
+
+    private static ByteBuffer toBytes(MemoryController controller){
+        long size = controller.size();
+        ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(Main.roundUpDiv(size,8)));
+        long i = 0;
+        for(; i+64<=size; i+=64){
+            bytes.putLong(controller.getBitsAsLong(i,64));
+        }
+        for(; i<size; i+=8){
+            int remaining = (int)Math.min(8,size-i);
+            bytes.put((byte)(controller.getBitsAsLong(i,remaining)<<(8-remaining)));
+        }
+        return bytes.flip();
+    }
+
+    private static void write(FileChannel channel, long position, ByteBuffer buffer) throws IOException{
+        while(buffer.hasRemaining()){
+            position+=channel.write(buffer,position);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer,position+buffer.position())<0){
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static class Tile<V>{
+
+        private final int index, row, column, height, width;
+        private long offset, bits, capacity;
+        private MemoryController stream;
+        private QuadrantTreeMatrix<V> matrix;
+        private V defaultItem;
+        private boolean dirty;
+
+        private Tile(int index, int row, int column, int height, int width){
+            this.index = index;
+            this.row = row;
+            this.column = column;
+            this.height = height;
+            this.width = width;
+        }
+    }
+
+    private class EncodeTask extends RecursiveAction{
+
+        private static final long serialVersionUID = 1L;
+        private final E[][] matrix;
+        private final int start, end;
+
+        private EncodeTask(E[][] matrix, int start, int end){
+            this.matrix = matrix;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute(){
+            if(end-start>1){
+                int mid = (start+end)>>>1;
+                invokeAll(new EncodeTask(matrix,start,mid),new EncodeTask(matrix,mid,end));
+                return;
+            }
+            encodeTiles();
+        }
+
+        private void encodeTiles(){
+            for(int i = start; i<end; i++){
+                Tile<E> tile = tiles[i];
+                E[][] slice = Arrays.copyOfRange(matrix,tile.row,tile.row+tile.height);
+                for(int r = 0; r<slice.length; r++){
+                    slice[r] = Arrays.copyOfRange(slice[r],tile.column,tile.column+tile.width);
+                }
+                tile.stream = new QuadrantTreeEncoder<>(slice,bitsPerData,bitEncoder,bitDecoder).encodeMatrix(new MemoryController(QuadrantTreeMatrix.defaultStorage));
+                tile.defaultItem = new StandardHeader<>(tile.stream,bitDecoder).defaultItem;
+            }
+        }
+    }
+
+    private class DecodeTask extends RecursiveAction{
+
+        private static final long serialVersionUID = 1L;
+        private final E[][] matrix;
+        private final int start, end;
+
+        private DecodeTask(E[][] matrix, int start, int end){
+            this.matrix = matrix;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute(){
+            if(end-start>1){
+                int mid = (start+end)>>>1;
+                invokeAll(new DecodeTask(matrix,start,mid),new DecodeTask(matrix,mid,end));
+                return;
+            }
+            decodeTiles();
+        }
+
+        private void decodeTiles(){
+            for(int i = start; i<end; i++){
+                Tile<E> tile = tiles[i];
+                MemoryController stream = stream(tile);
+                if(stream==null){
+                    for(int r = tile.row; r<tile.row+tile.height; r++){
+                        Arrays.fill(matrix[r],tile.column,tile.column+tile.width,defaultItem);
+                    }
+                    continue;
+                }
+                QuadrantTreeEncoder.decode(stream,bitDecoder,(r,c,value)->matrix[r+tile.row][c+tile.column] = value);
+            }
+        }
+    }
+
+    private class ProductTask extends RecursiveAction{
+
+        private static final long serialVersionUID = 1L;
+        private final double[] x, y;
+        private final LongToDoubleFunction values;
+        private final double defaultValue;
+        private final boolean transpose;
+        private final int startBand, endBand;
+
+        private ProductTask(double[] x, double[] y, LongToDoubleFunction values, double defaultValue, boolean transpose, int startBand, int endBand){
+            this.x = x;
+            this.y = y;
+            this.values = values;
+            this.defaultValue = defaultValue;
+            this.transpose = transpose;
+            this.startBand = startBand;
+            this.endBand = endBand;
+        }
+
+        protected void compute(){
+            if(endBand-startBand>1){
+                int mid = (startBand+endBand)>>>1;
+                invokeAll(new ProductTask(x,y,values,defaultValue,transpose,startBand,mid),new ProductTask(x,y,values,defaultValue,transpose,mid,endBand));
+                return;
+            }
+            multiplyBands();
+        }
+
+        private void multiplyBands(){
+            for(int band = startBand; band<endBand; band++){
+                int across = transpose?tileRows:tileColumns;
+                for(int i = 0; i<across; i++){
+                    Tile<E> tile = transpose?tiles[i*tileColumns+band]:tiles[band*tileColumns+i];
+                    int inStart = transpose?tile.row:tile.column, outStart = transpose?tile.column:tile.row;
+                    double[] in = Arrays.copyOfRange(x,inStart,inStart+(transpose?tile.height:tile.width));
+                    double[] out = new double[transpose?tile.width:tile.height];
+                    QuadrantTreeMatrix<E> matrix = tile(tile,false,false);
+                    if(matrix==null){
+                        double sum = 0;
+                        for(double value : in){
+                            sum+=value;
+                        }
+                        Arrays.fill(out,defaultValue*sum);
+                    }else{
+                        matrix.multiply(in,out,values,transpose,null);
+                    }
+                    for(int j = 0; j<out.length; j++){
+                        y[outStart+j]+=out[j];
+                    }
+                }
+            }
+        }
+    }
+
+    private static class TileIterator<V> implements Iterator<DataPoint<V>>{
+
+        private final TiledMatrix<V> matrix;
+        private final Quadrant readFrame;
+        private final IteratorType type;
+        private final int outerEnd, innerStart, innerEnd;
+        private int outer, inner, rowOffset, columnOffset, segmentRow, segmentColumn, segmentWidth;
+        private long defaultIndex, defaultEnd;
+        private Iterator<DataPoint<V>> current;
+        private boolean filter;
+        private DataPoint<V> pending;
+
+        private TileIterator(TiledMatrix<V> matrix, Quadrant readFrame, IteratorType type){
+            this.matrix = matrix;
+            this.readFrame = readFrame;
+            this.type = type;
+            int tileSize = matrix.tileSize;
+            int firstRow = readFrame.yPos, lastRow = readFrame.yPos+readFrame.height-1;
+            int firstColumn = readFrame.xPos, lastColumn = readFrame.xPos+readFrame.width-1;
+            if(type==IteratorType.BY_ROW){
+                outer = firstRow;
+                outerEnd = lastRow;
+                innerStart = firstColumn/tileSize;
+                innerEnd = lastColumn/tileSize;
+            }else if(type==IteratorType.BY_COL){
+                outer = firstColumn;
+                outerEnd = lastColumn;
+                innerStart = firstRow/tileSize;
+                innerEnd = lastRow/tileSize;
+            }else{
+                outer = firstRow/tileSize;
+                outerEnd = lastRow/tileSize;
+                innerStart = firstColumn/tileSize;
+                innerEnd = lastColumn/tileSize;
+            }
+            inner = innerStart;
+            if(readFrame.height==0||readFrame.width==0){
+                outer = outerEnd+1;
+            }
+        }
+
+        private boolean nextSegment(){
+            if(outer>outerEnd){
+                return false;
+            }
+            int tileSize = matrix.tileSize;
+            int top, bottom, left, right;
+            if(type==IteratorType.BY_ROW){
+                top = outer;
+                bottom = outer+1;
+                left = Math.max(readFrame.xPos,inner*tileSize);
+                right = Math.min(readFrame.xPos+readFrame.width,(inner+1)*tileSize);
+            }else if(type==IteratorType.BY_COL){
+                top = Math.max(readFrame.yPos,inner*tileSize);
+                bottom = Math.min(readFrame.yPos+readFrame.height,(inner+1)*tileSize);
+                left = outer;
+                right = outer+1;
+            }else{
+                top = Math.max(readFrame.yPos,outer*tileSize);
+                bottom = Math.min(readFrame.yPos+readFrame.height,(outer+1)*tileSize);
+                left = Math.max(readFrame.xPos,inner*tileSize);
+                right = Math.min(readFrame.xPos+readFrame.width,(inner+1)*tileSize);
+            }
+            if(++inner>innerEnd){
+                inner = innerStart;
+                outer++;
+            }
+            Tile<V> tile = matrix.tileAt(top,left);
+            QuadrantTreeMatrix<V> tileMatrix = matrix.tile(tile,false,false);
+            current = null;
+            defaultIndex = 0;
+            defaultEnd = 0;
+            if(tileMatrix==null){
+                if(type!=IteratorType.NON_DEFAULT){
+                    segmentRow = top;
+                    segmentColumn = left;
+                    segmentWidth = right-left;
+                    defaultEnd = (long)(bottom-top)*(right-left);
+                }
+                return true;
+            }
+            filter = type==IteratorType.NON_DEFAULT&&!tile.defaultItem.equals(matrix.defaultItem);
+            rowOffset = tile.row;
+            columnOffset = tile.column;
+            current = tileMatrix.iterator(top-tile.row,left-tile.column,bottom-top,right-left,filter?IteratorType.DEFAULT:type);
+            return true;
+        }
+
+        private void advance(){
+            while(pending==null){
+                if(current!=null&&current.hasNext()){
+                    DataPoint<V> point = current.next();
+                    if(!filter||!point.data.equals(matrix.defaultItem)){
+                        pending = new DataPoint<>(point.data,point.row+rowOffset,point.column+columnOffset);
+                    }
+                    continue;
+                }
+                if(defaultIndex<defaultEnd){
+                    pending = new DataPoint<>(matrix.defaultItem,segmentRow+(int)(defaultIndex/segmentWidth),segmentColumn+(int)(defaultIndex%segmentWidth));
+                    defaultIndex++;
+                    continue;
+                }
+                if(!nextSegment()){
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext(){
+            advance();
+            return pending!=null;
+        }
+
+        public DataPoint<V> next(){
+            if(!hasNext()){
+                throw new NoSuchElementException("Iterator has no more elements");
+            }
+            DataPoint<V> point = pending;
+            pending = null;
+            return point;
+        }
+    }
+}
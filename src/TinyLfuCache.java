@@ -0,0 +1,320 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+public class TinyLfuCache implements LongCacheManager {
+
+    private static final int initialCapacity = 16, maxTableSize = 1<<30, maxCapacity = maxTableSize/2;
+
+    private final Segment[] segments;
+    private final int mask;
+
+    public TinyLfuCache(int capacity){
+        this(capacity,defaultSegments());
+    }
+
+    public TinyLfuCache(int capacity, int segmentCount){
+        if(capacity<0||segmentCount<=0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        int count = Integer.highestOneBit(segmentCount);
+        if(count<segmentCount){
+            count<<=1;
+        }
+        count = Math.min(count,Integer.highestOneBit(Math.max(1,capacity/64)));
+        segments = new Segment[count];
+        for(int i = 0; i<count; i++){
+            segments[i] = new Segment((int)Main.roundUpDiv((long)capacity,count));
+        }
+        mask = count-1;
+    }
+
+    public static int defaultSegments(){
+        return Math.max(16,Runtime.getRuntime().availableProcessors()*4);
+    }
+
+    private static int tableSize(long entries){
+        return (int)Math.min(maxTableSize,Long.highestOneBit(Math.max(2,entries)*2-1)<<1);
+    }
+
+    private static int spread(long key){
+        long hash = key*0x9E3779B97F4A7C15L;
+        return (int)(hash^(hash>>>32));
+    }
+
+    private Segment segmentFor(long key){
+        return segments[spread(key)&mask];
+    }
+
+    public void putLong(long key, long value){
+        if(value<0){
+            throw new IllegalArgumentException("Cached values must not be negative");
+        }
+        Segment segment = segmentFor(key);
+        synchronized(segment){
+            segment.put(key,value);
+        }
+    }
+
+    public void removeLong(long key){
+        Segment segment = segmentFor(key);
+        synchronized(segment){
+            segment.remove(key);
+        }
+    }
+
+    public long getLong(long key){
+        Segment segment = segmentFor(key);
+        synchronized(segment){
+            return segment.get(key,true);
+        }
+    }
+
+    public long getLongNoCache(long key){
+        Segment segment = segmentFor(key);
+        synchronized(segment){
+            return segment.get(key,false);
+        }
+    }
+
+    public void improveLong(long key){
+        Segment segment = segmentFor(key);
+        synchronized(segment){
+            segment.get(key,true);
+        }
+    }
+
+    public void clear(){
+        for(Segment segment : segments){
+            synchronized(segment){
+                segment.clear();
+            }
+        }
+    }
+
+    public Set<Long> keySet(){
+        Set<Long> keys = new HashSet<>();
+        for(Segment segment : segments){
+            synchronized(segment){
+                for(int i = 0; i<segment.size; i++){
+                    keys.add(segment.keys[i]);
+                }
+            }
+        }
+        return keys;
+    }
+
+    public Collection<Long> values(){
+        ArrayList<Long> values = new ArrayList<>();
+        for(Segment segment : segments){
+            synchronized(segment){
+                for(int i = 0; i<segment.size; i++){
+                    values.add(segment.values[i]);
+                }
+            }
+        }
+        return values;
+    }
+
+    public int size(){
+        int size = 0;
+        for(Segment segment : segments){
+            synchronized(segment){
+                size+=segment.size;
+            }
+        }
+        return size;
+    }
+
+    private static class Segment{
+
+        private static final long[] seeds = {0xC13FA9A902A6328FL,0x91E10DA5C79E7B1DL,0xBF58476D1CE4E5B9L,0x94D049BB133111EBL};
+        private final int capacity;
+        private int tableMask, counterMask, sampleLimit;
+        private long[] keys, values;
+        private int[] table;
+        private boolean[] referenced;
+        private long[] sketch;
+        private int size, hand, samples;
+
+        private Segment(int capacity){
+            this.capacity = Math.min(capacity,maxCapacity);
+            allocate(Math.min(this.capacity,initialCapacity));
+        }
+
+        private void allocate(int length){
+            int tableSize = tableSize(length);
+            tableMask = tableSize-1;
+            table = new int[tableSize];
+            keys = new long[length];
+            values = new long[length];
+            referenced = new boolean[length];
+            int counters = (int)Math.min(maxTableSize,Math.max(16,Long.highestOneBit(Math.max(1,length)*4L-1)<<1));
+            counterMask = counters-1;
+            sketch = new long[counters/16];
+            sampleLimit = (int)Math.min(Integer.MAX_VALUE,Math.max(16,length*10L));
+            samples = 0;
+        }
+
+        // The sketch only decides admission once the segment is full, so growing it restarts the counts
+        private void grow(){
+            long[] oldKeys = keys, oldValues = values;
+            boolean[] oldReferenced = referenced;
+            allocate((int)Math.min(capacity,(long)keys.length*2));
+            System.arraycopy(oldKeys,0,keys,0,size);
+            System.arraycopy(oldValues,0,values,0,size);
+            System.arraycopy(oldReferenced,0,referenced,0,size);
+            for(int entry = 0; entry<size; entry++){
+                int slot = slotOf(keys[entry]);
+                while(table[slot]!=0){
+                    slot = (slot+1)&tableMask;
+                }
+                table[slot] = entry+1;
+            }
+        }
+
+        private int slotOf(long key){
+            long hash = key*0xC2B2AE3D27D4EB4FL;
+            return (int)(hash^(hash>>>29))&tableMask;
+        }
+
+        private int find(long key){
+            int slot = slotOf(key);
+            while(table[slot]!=0){
+                if(keys[table[slot]-1]==key){
+                    return slot;
+                }
+                slot = (slot+1)&tableMask;
+            }
+            return -1;
+        }
+
+        private int counterIndex(long key, int row){
+            long hash = (key+seeds[row])*seeds[(row+1)&3];
+            return (int)(hash^(hash>>>32))&counterMask;
+        }
+
+        private int frequency(long key){
+            int frequency = 15;
+            for(int row = 0; row<4; row++){
+                int index = counterIndex(key,row);
+                frequency = Math.min(frequency,(int)(sketch[index>>>4]>>>((index&15)<<2))&15);
+            }
+            return frequency;
+        }
+
+        private void increment(long key){
+            for(int row = 0; row<4; row++){
+                int index = counterIndex(key,row);
+                int shift = (index&15)<<2;
+                if(((sketch[index>>>4]>>>shift)&15)<15){
+                    sketch[index>>>4]+=1L<<shift;
+                }
+            }
+            if(++samples>=sampleLimit){
+                for(int i = 0; i<sketch.length; i++){
+                    sketch[i] = (sketch[i]>>>1)&0x7777777777777777L;
+                }
+                samples/=2;
+            }
+        }
+
+        private long get(long key, boolean access){
+            int slot = find(key);
+            if(access){
+                increment(key);
+            }
+            if(slot==-1){
+                return missing;
+            }
+            int entry = table[slot]-1;
+            if(access){
+                referenced[entry] = true;
+            }
+            return values[entry];
+        }
+
+        private void put(long key, long value){
+            increment(key);
+            int slot = find(key);
+            if(slot!=-1){
+                int entry = table[slot]-1;
+                values[entry] = value;
+                referenced[entry] = true;
+                return;
+            }
+            if(capacity==0){
+                return;
+            }
+            int entry;
+            if(size<capacity){
+                if(size==keys.length){
+                    grow();
+                }
+                entry = size++;
+            }else{
+                while(referenced[hand]){
+                    referenced[hand] = false;
+                    hand = (hand+1)%capacity;
+                }
+                entry = hand;
+                if(frequency(key)<=frequency(keys[entry])){
+                    return;
+                }
+                deleteSlot(find(keys[entry]));
+                hand = (hand+1)%capacity;
+            }
+            keys[entry] = key;
+            values[entry] = value;
+            referenced[entry] = false;
+            slot = slotOf(key);
+            while(table[slot]!=0){
+                slot = (slot+1)&tableMask;
+            }
+            table[slot] = entry+1;
+        }
+
+        private void remove(long key){
+            int slot = find(key);
+            if(slot==-1){
+                return;
+            }
+            int entry = table[slot]-1;
+            deleteSlot(slot);
+            int last = --size;
+            if(entry!=last){
+                keys[entry] = keys[last];
+                values[entry] = values[last];
+                referenced[entry] = referenced[last];
+                table[find(keys[entry])] = entry+1;
+            }
+            if(hand>=Math.max(1,size)){
+                hand = 0;
+            }
+        }
+
+        private void deleteSlot(int slot){
+            int next = slot;
+            while(true){
+                next = (next+1)&tableMask;
+                int entry = table[next];
+                if(entry==0){
+                    break;
+                }
+                int ideal = slotOf(keys[entry-1]);
+                if(((next-ideal)&tableMask)>=((next-slot)&tableMask)){
+                    table[slot] = entry;
+                    slot = next;
+                }
+            }
+            table[slot] = 0;
+        }
+
+        private void clear(){
+            allocate(Math.min(capacity,initialCapacity));
+            size = 0;
+            hand = 0;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+
+public class UpdateBatch<E> implements Iterable<DataPoint<E>>{
+
+    private final ArrayList<DataPoint<E>> updates;
+
+    public UpdateBatch(){
+        updates = new ArrayList<>();
+    }
+
+    public UpdateBatch<E> set(int r, int c, E value){
+        if(value==null||r<0||c<0){
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+        updates.add(new DataPoint<>(value,r,c));
+        return this;
+    }
+
+    public int size(){
+        return updates.size();
+    }
+
+    public void clear(){
+        updates.clear();
+    }
+
+    public Iterator<DataPoint<E>> iterator(){
+        return updates.iterator();
+    }
+}
@@ -5,7 +5,7 @@ import java.util.zip.*;
 public class ZipEncoder<E> implements MatrixEncoder<E> {
 
     private MatrixEncoder<E> baseEncoder;
-    private int totalSize;
+    private long totalSize;
 
     public ZipEncoder(MatrixEncoder<E> baseEncoder){
         this.baseEncoder = baseEncoder;
@@ -15,11 +15,11 @@ public class ZipEncoder<E> implements MatrixEncoder<E> {
         return "Zip";
     }
 
-    public int refSize() {
+    public long refSize() {
         return 0;
     }
 
-    public int dataSize() {
+    public long dataSize() {
         return totalSize;
     }
 
@@ -45,7 +45,9 @@ public class ZipEncoder<E> implements MatrixEncoder<E> {
         try{
             zos.putNextEntry(new ZipEntry("data"));
             MemoryController nestedController = baseEncoder.encodeMatrix(new MemoryController());
-            zos.write(nestedController.getBits(0,nestedController.size()));
+            for(long i = 0; i<nestedController.size(); i+=1<<20){
+                zos.write(nestedController.getBits(i,(int)Math.min(1<<20,nestedController.size()-i)));
+            }
             zos.close();
         }catch(IOException e){
             throw new RuntimeException("Error creating data entry");
@@ -68,8 +70,10 @@ public class ZipEncoder<E> implements MatrixEncoder<E> {
         try{
             zin.getNextEntry();
             MemoryController.MemoryBitOutputStream outputStream = dest.outputStream();
-            byte[] data = zin.readAllBytes();
-            outputStream.writeBits(data.length*8,data);
+            byte[] data = new byte[1<<16];
+            for(int read = zin.readNBytes(data,0,data.length); read>0; read = zin.readNBytes(data,0,data.length)){
+                outputStream.writeBits(read*8,data);
+            }
             zin.close();
         }catch(IOException e){
             throw new RuntimeException("Decoding Error");
@@ -81,4 +85,8 @@ public class ZipEncoder<E> implements MatrixEncoder<E> {
         return baseEncoder.decodeMatrix(unZip(controller,new MemoryController()));
     }
 
+    public void decode(MemoryController controller, MatrixVisitor<E> visitor){
+        baseEncoder.decode(unZip(controller,new MemoryController()),visitor);
+    }
+
 }
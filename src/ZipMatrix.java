@@ -1,4 +1,6 @@
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongToDoubleFunction;
 
 public class ZipMatrix<E> extends Matrix<E> {
 
@@ -24,7 +26,7 @@ public class ZipMatrix<E> extends Matrix<E> {
         );
     }
 
-    public int estimateBitSize() {
+    public long estimateBitSize() {
         return encodedMatrix.size();
     }
 
@@ -52,6 +54,14 @@ public class ZipMatrix<E> extends Matrix<E> {
         return zipEncoder.decodeMatrix(encodedMatrix);
     }
 
+    public void visit(MatrixVisitor<E> visitor){
+        zipEncoder.decode(encodedMatrix,visitor);
+    }
+
+    public void multiply(double[] x, double[] y, LongToDoubleFunction values, boolean transpose, ForkJoinPool pool){
+        nestedMatrix().multiply(x,y,values,transpose,pool);
+    }
+
     public Iterator<DataPoint<E>> iterator(int r, int c, int h, int w, IteratorType type){
         return nestedMatrix().iterator(r,c,h,w,type);
     }